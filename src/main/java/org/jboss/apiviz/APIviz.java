@@ -27,19 +27,11 @@ import static org.jboss.apiviz.Constant.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import jdepend.framework.JDepend;
-import jdepend.framework.JavaClass;
-import jdepend.framework.JavaPackage;
-import jdepend.framework.PackageFilter;
 
 import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.DocErrorReporter;
@@ -57,8 +49,9 @@ import com.sun.tools.doclets.standard.Standard;
  */
 public class APIviz {
 
-    private static final Pattern INSERTION_POINT_PATTERN = Pattern.compile(
-            "((<\\/PRE>)(?=\\s*<P>)|(?=<TABLE BORDER=\"1\")|(?=<div class=\"contentContainer\"))");
+    private static final int DEFAULT_RENDER_BATCH_SIZE = 16;
+    private static final int DEFAULT_RENDER_CACHE_SIZE = 256; // megabytes
+    private static final int DEFAULT_INJECT_THREADS = 2;
 
     static Map<String, PackageDoc> getPackages(RootDoc root) {
         Map<String, PackageDoc> packages = new TreeMap<String, PackageDoc>();
@@ -72,40 +65,25 @@ public class APIviz {
         return packages;
     }
 
-    @SuppressWarnings("unchecked")
-    private static boolean checkClasspathOption(RootDoc root, JDepend jdepend) {
+    private static boolean checkClasspathOption(RootDoc root, ClassDocGraph graph, DependencyScanner scanner) {
         // Sanity check
         boolean correctClasspath = true;
-        if (jdepend.countClasses() == 0) {
+        if (scanner.countClasses() == 0) {
             root.printWarning(
-                    "JDepend was not able to locate any compiled class files.");
+                    "Dependency analysis was not able to locate any compiled class files.");
             correctClasspath = false;
         } else {
             for (ClassDoc c: root.classes()) {
                 if (c.containingPackage() == null ||
                     c.containingPackage().name() == null ||
-                    ClassDocGraph.isHidden(c.containingPackage())) {
+                    graph.getAttributes(c.containingPackage()).isHidden()) {
                     continue;
                 }
 
-                boolean found = false;
                 String fqcn = c.containingPackage().name() + '.' + c.name().replace('.', '$');
-                JavaPackage jpkg = jdepend.getPackage(c.containingPackage().name());
-                if (jpkg != null) {
-                    Collection<JavaClass> jclasses = jpkg.getClasses();
-                    if (jclasses != null) {
-                        for (JavaClass jcls: jclasses) {
-                            if (fqcn.equals(jcls.getName())) {
-                                found = true;
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                if (!found) {
+                if (!scanner.containsClass(fqcn)) {
                     root.printWarning(
-                            "JDepend was not able to locate some compiled class files: " + fqcn);
+                            "Dependency analysis was not able to locate some compiled class files: " + fqcn);
                     correctClasspath = false;
                     break;
                 }
@@ -114,75 +92,135 @@ public class APIviz {
         return correctClasspath;
     }
 
-    private static void generateClassDiagrams(RootDoc root, ClassDocGraph graph, File outputDirectory) throws IOException {
-        for (ClassDoc c: root.classes()) {
+    private static void generateClassDiagrams(RootDoc root, final ClassDocGraph graph, Scheduler scheduler, HtmlIndex pages) {
+        for (final ClassDoc c: root.classes()) {
+            String filename;
             if (c.containingPackage() == null) {
-                instrumentDiagram(
-                        root, outputDirectory,
-                        c.name(),
-                        graph.getClassDiagram(c));
+                filename = getDiagramFilename(pages, c.name());
             } else {
-                instrumentDiagram(
-                        root, outputDirectory,
+                filename = getDiagramFilename(
+                        pages,
                         c.containingPackage().name().replace('.', File.separatorChar) +
-                        File.separatorChar + c.name(),
-                        graph.getClassDiagram(c));
+                        File.separatorChar + c.name());
+            }
+
+            if (filename == null) {
+                continue;
             }
+
+            // Class diagrams are usually small enough for the start-up time
+            // of Graphviz to dominate, so we render many of them per
+            // invocation.
+            scheduler.add(filename, new Scheduler.Source() {
+                public CostModel.Size getSize() {
+                    return graph.measureClassDiagram(c);
+                }
+
+                public void write(Appendable out) throws IOException {
+                    graph.writeClassDiagram(c, out);
+                }
+            }, true);
         }
     }
 
-    private static void generateOverviewSummary(RootDoc root, ClassDocGraph graph, File outputDirectory) throws IOException {
-        final Map<String, PackageDoc> packages = getPackages(root);
-        PackageFilter packageFilter = new PackageFilter() {
-            @Override
-            public boolean accept(String packageName) {
-                PackageDoc p = packages.get(packageName);
-                if (p == null) {
-                    return false;
-                }
+    private static void generateOverviewSummary(RootDoc root, ClassDocGraph graph, Scheduler scheduler, HtmlIndex pages) throws IOException {
+        Map<String, Set<String>> dependencies;
+        if (shouldAnalyzeSource(root.options())) {
+            root.printNotice("Analyzing the package dependencies in the source code...");
+            dependencies = graph.getSourceDependencies();
+        } else {
+            dependencies = analyzeClassFiles(root, graph);
+            if (dependencies == null) {
+                root.printWarning(
+                        "Please make sure that the '" +
+                        OPTION_SOURCE_CLASS_PATH +
+                        "' option was specified correctly, or specify '" +
+                        OPTION_SOURCE_DEPENDENCIES + "' instead.");
+                root.printWarning(
+                        "Package dependency diagram will not be generated " +
+                        "to avoid the inaccurate result.");
+                return;
+            }
+        }
+
+        String filename = getDiagramFilename(pages, "overview-summary");
+        if (filename == null) {
+            return;
+        }
+
+        final String diagram = graph.getOverviewSummaryDiagram(dependencies);
+        scheduler.add(filename, new Scheduler.Source() {
+            public CostModel.Size getSize() {
+                return CostModel.measure(diagram);
+            }
+
+            public void write(Appendable out) throws IOException {
+                out.append(diagram);
+            }
+        }, false);
+    }
 
-                return !ClassDocGraph.isHidden(p);
+    /**
+     * Returns the package dependencies found in the class files, or
+     * {@code null} if some classes were not found.
+     */
+    private static Map<String, Set<String>> analyzeClassFiles(RootDoc root, ClassDocGraph graph) throws IOException {
+        List<String> packageNames = new ArrayList<String>();
+        for (PackageDoc p: getPackages(root).values()) {
+            if (!graph.getAttributes(p).isHidden()) {
+                packageNames.add(p.name());
             }
-        };
+        }
 
-        JDepend jdepend = new JDepend(packageFilter);
+        DependencyCache cache = getDependencyCache(root.options());
+        DependencyScanner scanner = new DependencyScanner(packageNames, cache);
 
         File[] classPath = getClassPath(root.options());
         for (File e: classPath) {
             if (e.isDirectory()) {
                 root.printNotice(
                         "Included into dependency analysis: " + e);
-                jdepend.addDirectory(e.toString());
+                scanner.addDirectory(e);
+            } else if (e.isFile()) {
+                root.printNotice(
+                        "Included into dependency analysis: " + e);
+                scanner.addArchive(e);
             } else {
                 root.printNotice(
                         "Excluded from dependency analysis: " + e);
             }
         }
 
-        jdepend.analyze();
+        scanner.analyze(root, Stage.getDefaultThreads());
+        if (cache != null) {
+            cache.save();
+        }
 
-        if (checkClasspathOption(root, jdepend)) {
-            instrumentDiagram(
-                    root, outputDirectory, "overview-summary",
-                    graph.getOverviewSummaryDiagram(jdepend));
-        } else {
-            root.printWarning(
-                    "Please make sure that the '" +
-                    OPTION_SOURCE_CLASS_PATH +
-                    "' option was specified correctly.");
-            root.printWarning(
-                    "Package dependency diagram will not be generated " +
-                    "to avoid the inaccurate result.");
+        if (!checkClasspathOption(root, graph, scanner)) {
+            return null;
         }
+        return scanner.getDependencies();
     }
 
-    private static void generatePackageSummaries(RootDoc root, ClassDocGraph graph, File outputDirectory) throws IOException {
-        for (PackageDoc p: getPackages(root).values()) {
-            instrumentDiagram(
-                    root, outputDirectory,
+    private static void generatePackageSummaries(RootDoc root, final ClassDocGraph graph, Scheduler scheduler, HtmlIndex pages) {
+        for (final PackageDoc p: getPackages(root).values()) {
+            String filename = getDiagramFilename(
+                    pages,
                     p.name().replace('.', File.separatorChar) +
-                    File.separatorChar + "package-summary",
-                    graph.getPackageSummaryDiagram(p));
+                    File.separatorChar + "package-summary");
+            if (filename == null) {
+                continue;
+            }
+
+            scheduler.add(filename, new Scheduler.Source() {
+                public CostModel.Size getSize() {
+                    return graph.measurePackageSummaryDiagram(p);
+                }
+
+                public void write(Appendable out) throws IOException {
+                    graph.writePackageSummaryDiagram(p, out);
+                }
+            }, false);
         }
     }
 
@@ -210,7 +248,92 @@ public class APIviz {
         return cp.toArray(new File[cp.size()]);
     }
 
-    private static File getOutputDirectory(String[][] options) {
+    private static int getRenderThreads(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_RENDER_THREADS)) {
+                return Integer.parseInt(o[1]);
+            }
+        }
+
+        return Stage.getDefaultThreads();
+    }
+
+    /**
+     * Returns the memory the Graphviz processes may use at the same time in
+     * bytes.
+     */
+    private static long getRenderMemory(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_RENDER_MEMORY)) {
+                return Long.parseLong(o[1]) * 1048576;
+            }
+        }
+
+        return MemoryBudget.getDefaultBudget();
+    }
+
+    /**
+     * Returns the time a Graphviz process may take in milliseconds, or
+     * {@code 0} for no limit.
+     */
+    private static long getRenderTimeout(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_RENDER_TIMEOUT)) {
+                return Long.parseLong(o[1]) * 1000;
+            }
+        }
+
+        return 0;
+    }
+
+    private static int getInjectThreads(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_INJECT_THREADS)) {
+                return Integer.parseInt(o[1]);
+            }
+        }
+
+        return DEFAULT_INJECT_THREADS;
+    }
+
+    private static RenderCache getRenderCache(String[][] options) throws IOException {
+        File directory = null;
+        long capacity = DEFAULT_RENDER_CACHE_SIZE;
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_RENDER_CACHE)) {
+                directory = new File(o[1]);
+            } else if (o[0].equals(OPTION_RENDER_CACHE_SIZE)) {
+                capacity = Long.parseLong(o[1]);
+            }
+        }
+
+        if (directory == null) {
+            return null;
+        }
+        return new RenderCache(directory, capacity * 1048576, Graphviz.getVersion());
+    }
+
+    private static int getRenderBatchSize(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_RENDER_BATCH_SIZE)) {
+                return Integer.parseInt(o[1]);
+            }
+        }
+
+        return DEFAULT_RENDER_BATCH_SIZE;
+    }
+
+    private static ImageFormat getImageFormat(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_IMAGE_FORMAT)) {
+                return ImageFormat.valueOf(o[1].toUpperCase());
+            }
+        }
+
+        return ImageFormat.PNG;
+    }
+
+    static File getOutputDirectory(String[][] options) {
         for (String[] o: options) {
             if (o[0].equals("-d")) {
                 return new File(o[1]);
@@ -221,17 +344,12 @@ public class APIviz {
         return new File(System.getProperty("user.dir", "."));
     }
 
-    private static void instrumentDiagram(RootDoc root, File outputDirectory, String filename, String diagram) throws IOException {
-        // TODO - it would be nice to have a debug flag that would spit out the graphviz source as well
-        //System.out.println(diagram);
-
-        boolean needsBottomMargin = filename.contains("overview-summary") || filename.contains("package-summary");
-
-        File htmlFile = new File(outputDirectory, filename + ".html");
-        File pngFile = new File(outputDirectory, filename + ".png");
-        File mapFile = new File(outputDirectory, filename + ".map");
-
-        if (!htmlFile.exists()) {
+    /**
+     * Returns the filename of the page the specified diagram goes into,
+     * without the extension, or {@code null} if there is no such page.
+     */
+    private static String getDiagramFilename(HtmlIndex pages, String filename) {
+        if (!pages.contains(filename)) {
             // Shouldn't reach here anymore.
             // I'm retaining the code just in case.
             for (;;) {
@@ -241,42 +359,53 @@ public class APIviz {
                                filename.substring(idx + 1);
                 } else {
                     // Give up (maybe missing)
-                    return;
+                    return null;
                 }
-                htmlFile = new File(outputDirectory, filename + ".html");
-                if (htmlFile.exists()) {
-                    pngFile = new File(outputDirectory, filename + ".png");
-                    mapFile = new File(outputDirectory, filename + ".map");
+                if (pages.contains(filename)) {
                     break;
                 }
             }
         }
 
-        root.printNotice("Generating " + pngFile + "...");
-        Graphviz.writeImageAndMap(root, diagram, outputDirectory, filename);
+        return filename;
+    }
 
-        try {
-            String oldContent = FileUtil.readFile(htmlFile);
-            String mapContent = FileUtil.readFile(mapFile);
-
-            Matcher matcher = INSERTION_POINT_PATTERN.matcher(oldContent);
-            if (!matcher.find()) {
-                throw new IllegalStateException(
-                        "Failed to find an insertion point.");
-            }
-            String newContent =
-                oldContent.substring(0, matcher.end()) +
-                mapContent + NEWLINE +
-                "<CENTER><IMG SRC=\"" + pngFile.getName() +
-                "\" USEMAP=\"#APIVIZ\" BORDER=\"0\"></CENTER>" +
-                NEWLINE +
-                (needsBottomMargin? "<BR>" : "") +
-                NEWLINE +
-                oldContent.substring(matcher.end());
-            FileUtil.writeFile(htmlFile, newContent);
-        } finally {
-            mapFile.delete();
+    private static Manifest getManifest(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_NO_INCREMENTAL)) {
+                return null;
+            }
         }
+
+        return new Manifest(getOutputDirectory(options), Graphviz.getVersion());
+    }
+
+    private static DependencyCache getDependencyCache(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_NO_INCREMENTAL)) {
+                return null;
+            }
+        }
+
+        return new DependencyCache(getOutputDirectory(options));
+    }
+
+    private static boolean shouldResume(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_RESUME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean shouldAnalyzeSource(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_SOURCE_DEPENDENCIES)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private static boolean shouldGeneratePackageDiagram(String[][] options) {
@@ -293,6 +422,26 @@ public class APIviz {
     }
 
     public static int optionLength(String option) {
+        int length = getOptionLength(option);
+        if (length > 0) {
+            return length;
+        }
+
+        int answer = Standard.optionLength(option);
+
+        if (option.equals(OPTION_HELP)) {
+            System.out.println();
+            printOptions();
+        }
+
+        return answer;
+    }
+
+    /**
+     * Returns the length of the specified option if it is provided by
+     * APIviz, or {@code 0} otherwise.
+     */
+    static int getOptionLength(String option) {
         if (OPTION_CATEGORY.equals(option)) {
             return 2;
         }
@@ -301,23 +450,77 @@ public class APIviz {
             return 2;
         }
 
+        if (OPTION_SOURCE_DEPENDENCIES.equals(option)) {
+            return 1;
+        }
+
         if (OPTION_NO_PACKAGE_DIAGRAM.equals(option)) {
             return 1;
         }
 
-        int answer = Standard.optionLength(option);
+        if (OPTION_RENDER_THREADS.equals(option)) {
+            return 2;
+        }
 
-        if (option.equals(OPTION_HELP)) {
-            // Print the options provided by APIviz.
-            System.out.println();
-            System.out.println("Provided by APIviz doclet:");
-            System.out.println(OPTION_SOURCE_CLASS_PATH   + " <pathlist>     Specify where to find source class files");
-            System.out.println(OPTION_NO_PACKAGE_DIAGRAM  + "               Do not generate the package diagram in the overview summary");
-            System.out.println(OPTION_CATEGORY + "                       <category>[:<fillcolor>[:<linecolor>]] ");
-            System.out.println("                                    Color for items marked with " + TAG_CATEGORY);
+        if (OPTION_RENDER_BATCH_SIZE.equals(option)) {
+            return 2;
         }
 
-        return answer;
+        if (OPTION_RENDER_CACHE.equals(option)) {
+            return 2;
+        }
+
+        if (OPTION_RENDER_CACHE_SIZE.equals(option)) {
+            return 2;
+        }
+
+        if (OPTION_RENDER_MEMORY.equals(option)) {
+            return 2;
+        }
+
+        if (OPTION_RENDER_TIMEOUT.equals(option)) {
+            return 2;
+        }
+
+        if (OPTION_INJECT_THREADS.equals(option)) {
+            return 2;
+        }
+
+        if (OPTION_IMAGE_FORMAT.equals(option)) {
+            return 2;
+        }
+
+        if (OPTION_NO_INCREMENTAL.equals(option)) {
+            return 1;
+        }
+
+        if (OPTION_RESUME.equals(option)) {
+            return 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Prints the options provided by APIviz.
+     */
+    static void printOptions() {
+        System.out.println("Provided by APIviz doclet:");
+        System.out.println(OPTION_SOURCE_CLASS_PATH   + " <pathlist>     Specify where to find source class files");
+        System.out.println(OPTION_SOURCE_DEPENDENCIES + "             Find the package dependencies in the source code instead of the class files");
+        System.out.println(OPTION_NO_PACKAGE_DIAGRAM  + "               Do not generate the package diagram in the overview summary");
+        System.out.println(OPTION_RENDER_THREADS      + " <n>              Number of diagrams to render concurrently (default: number of CPUs)");
+        System.out.println(OPTION_RENDER_BATCH_SIZE   + " <n>            Number of class diagrams to render per Graphviz process (default: " + DEFAULT_RENDER_BATCH_SIZE + ")");
+        System.out.println(OPTION_RENDER_CACHE        + " <directory>        Reuse the diagrams rendered by the previous runs");
+        System.out.println(OPTION_RENDER_CACHE_SIZE   + " <megabytes>    Maximum size of the render cache (default: " + DEFAULT_RENDER_CACHE_SIZE + ")");
+        System.out.println(OPTION_RENDER_MEMORY       + " <megabytes>       Memory the Graphviz processes may use at the same time (default: 3/4 of the memory left to them)");
+        System.out.println(OPTION_RENDER_TIMEOUT      + " <seconds>        Time Graphviz may take on a diagram before it is laid out again with cheaper settings (default: no limit)");
+        System.out.println(OPTION_INJECT_THREADS      + " <n>              Number of threads that insert the diagrams into the HTML pages (default: " + DEFAULT_INJECT_THREADS + ")");
+        System.out.println(OPTION_IMAGE_FORMAT        + " <png|svg>          Image format of the diagrams (default: png)");
+        System.out.println(OPTION_NO_INCREMENTAL      + "                  Render all diagrams and analyze all class files again, even those that did not change since the last run");
+        System.out.println(OPTION_RESUME              + "                         Continue an interrupted run, keeping the diagrams it finished and skipping those it failed to generate");
+        System.out.println(OPTION_CATEGORY + "                       <category>[:<fillcolor>[:<linecolor>]] ");
+        System.out.println("                                    Color for items marked with " + TAG_CATEGORY);
     }
 
     public static boolean start(RootDoc root) {
@@ -326,6 +529,22 @@ public class APIviz {
             return false;
         }
 
+        return generateDiagrams(
+                root, new HtmlIndex(getOutputDirectory(root.options())),
+                getInjectThreads(root.options()));
+    }
+
+    /**
+     * Generates the diagrams of the specified classes and packages.
+     *
+     * @param pages          the pages in the output directory
+     * @param injectThreads  the number of threads that insert the diagrams
+     *                       into the pages, or {@code 0} to leave the
+     *                       diagrams as they are rendered
+     * @return {@code false} if and only if something went wrong other than
+     *         failing to generate some diagrams
+     */
+    static boolean generateDiagrams(RootDoc root, HtmlIndex pages, int injectThreads) {
         if (!Graphviz.isAvailable(root)) {
             root.printWarning("Graphviz is not found.");
             root.printWarning("Please install graphviz and specify -Dgraphviz.home Otherwise, you might have specified incorrect graphviz home Graphviz is not found in the system path.");
@@ -334,13 +553,59 @@ public class APIviz {
         }
 
         try {
-            File outputDirectory = getOutputDirectory(root.options());
             ClassDocGraph graph = new ClassDocGraph(root);
-            if (shouldGeneratePackageDiagram(root.options())) {
-                generateOverviewSummary(root, graph, outputDirectory);
+            Manifest manifest = getManifest(root.options());
+            Journal journal = new Journal(
+                    pages.getDirectory(), Graphviz.getVersion(),
+                    shouldResume(root.options()));
+            CostModel costs = new CostModel(pages.getDirectory());
+            Pipeline pipeline = new Pipeline(
+                    root, journal, manifest, getRenderCache(root.options()),
+                    costs, getRenderThreads(root.options()),
+                    getRenderTimeout(root.options()), injectThreads);
+            MemoryBudget budget = new MemoryBudget(
+                    getRenderMemory(root.options()), pipeline.getRenderThreads());
+            Scheduler scheduler = new Scheduler(
+                    pipeline, costs, budget, pages.getDirectory(),
+                    getImageFormat(root.options()),
+                    getRenderBatchSize(root.options()));
+            root.printNotice("Rendering diagrams using " + pipeline.getRenderThreads() + " thread(s)...");
+            boolean complete = false;
+            try {
+                if (shouldGeneratePackageDiagram(root.options())) {
+                    generateOverviewSummary(root, graph, scheduler, pages);
+                }
+                generatePackageSummaries(root, graph, scheduler, pages);
+                generateClassDiagrams(root, graph, scheduler, pages);
+                scheduler.submit();
+                pipeline.await();
+                complete = pipeline.getFailures() == 0;
+            } finally {
+                if (manifest != null) {
+                    // Record what was rendered even if something failed.
+                    manifest.save();
+                }
+                costs.save();
+                journal.close(complete);
+            }
+
+            List<Diagram> degradedDiagrams = pipeline.getDegradedDiagrams();
+            if (!degradedDiagrams.isEmpty()) {
+                root.printWarning(
+                        degradedDiagrams.size() +
+                        " diagram(s) were laid out with cheaper settings to stay within " +
+                        OPTION_RENDER_TIMEOUT + ":");
+                for (Diagram d: degradedDiagrams) {
+                    root.printWarning(
+                            "  " + d.getImageFile() + " (" +
+                            d.getQuality().getDescription() + ")");
+                }
+            }
+            if (pipeline.getFailures() > 0) {
+                root.printWarning(
+                        pipeline.getFailures() +
+                        " diagram(s) could not be generated; see the warnings above.");
             }
-            generatePackageSummaries(root, graph, outputDirectory);
-            generateClassDiagrams(root, graph, outputDirectory);
         } catch(Throwable t) {
             root.printError(
                     "An error occurred during diagram generation: " +
@@ -352,6 +617,67 @@ public class APIviz {
     }
 
     public static boolean validOptions(String[][] options, DocErrorReporter errorReporter) {
+        if (!checkOptions(options, errorReporter)) {
+            return false;
+        }
+
+        List<String[]> newOptions = new ArrayList<String[]>();
+        for (String[] o: options) {
+            if (OPTION_CATEGORY.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_SOURCE_CLASS_PATH.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_SOURCE_DEPENDENCIES.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_NO_PACKAGE_DIAGRAM.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RENDER_THREADS.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RENDER_BATCH_SIZE.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RENDER_CACHE.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RENDER_CACHE_SIZE.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RENDER_MEMORY.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RENDER_TIMEOUT.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_INJECT_THREADS.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_IMAGE_FORMAT.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_NO_INCREMENTAL.equals(o[0])) {
+                continue;
+            }
+            if (OPTION_RESUME.equals(o[0])) {
+                continue;
+            }
+
+            newOptions.add(o);
+        }
+
+        return Standard.validOptions(
+                newOptions.toArray(new String[newOptions.size()][]),
+                errorReporter);
+    }
+
+    /**
+     * Checks the options provided by APIviz.
+     */
+    static boolean checkOptions(String[][] options, DocErrorReporter errorReporter) {
         for (String[] o: options) {
             if (OPTION_SOURCE_CLASS_PATH.equals(o[0])) {
                 File[] cp = getClassPath(options);
@@ -370,25 +696,35 @@ public class APIviz {
                     }
                 }
             }
-        }
-
-        List<String[]> newOptions = new ArrayList<String[]>();
-        for (String[] o: options) {
-            if (OPTION_CATEGORY.equals(o[0])) {
-                continue;
-            }
-            if (OPTION_SOURCE_CLASS_PATH.equals(o[0])) {
-                continue;
+            if (OPTION_RENDER_THREADS.equals(o[0]) ||
+                OPTION_RENDER_BATCH_SIZE.equals(o[0]) ||
+                OPTION_RENDER_CACHE_SIZE.equals(o[0]) ||
+                OPTION_RENDER_MEMORY.equals(o[0]) ||
+                OPTION_RENDER_TIMEOUT.equals(o[0]) ||
+                OPTION_INJECT_THREADS.equals(o[0])) {
+                int value;
+                try {
+                    value = Integer.parseInt(o[1]);
+                } catch (NumberFormatException e) {
+                    value = 0;
+                }
+                if (value <= 0) {
+                    errorReporter.printError(
+                            o[0] + " requires a positive integer: " + o[1]);
+                    return false;
+                }
             }
-            if (OPTION_NO_PACKAGE_DIAGRAM.equals(o[0])) {
-                continue;
+            if (OPTION_IMAGE_FORMAT.equals(o[0])) {
+                try {
+                    ImageFormat.valueOf(o[1].toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    errorReporter.printError(
+                            o[0] + " requires png or svg: " + o[1]);
+                    return false;
+                }
             }
-
-            newOptions.add(o);
         }
 
-        return Standard.validOptions(
-                newOptions.toArray(new String[newOptions.size()][]),
-                errorReporter);
+        return true;
     }
 }
@@ -23,6 +23,8 @@
 package org.jboss.apiviz;
 
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import com.sun.javadoc.ClassDoc;
 
@@ -36,6 +38,7 @@ import com.sun.javadoc.ClassDoc;
 class ClassDocComparator implements Comparator<ClassDoc> {
 
     private final boolean portrait;
+    private final Map<ClassDoc, Integer> precedences = new IdentityHashMap<ClassDoc, Integer>();
 
     ClassDocComparator(boolean portrait) {
         this.portrait = portrait;
@@ -58,7 +61,17 @@ class ClassDocComparator implements Comparator<ClassDoc> {
         }
     }
 
-    private static int getPrecedence(ClassDoc c) {
+    private int getPrecedence(ClassDoc c) {
+        // isStaticType() scans all methods, so remember the answer.
+        Integer precedence = precedences.get(c);
+        if (precedence == null) {
+            precedence = calculatePrecedence(c);
+            precedences.put(c, precedence);
+        }
+        return precedence;
+    }
+
+    private static int calculatePrecedence(ClassDoc c) {
         if (c.isAnnotationType()) {
             return 0;
         }
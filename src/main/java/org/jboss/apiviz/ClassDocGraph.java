@@ -23,16 +23,18 @@
 package org.jboss.apiviz;
 
 import com.sun.javadoc.*;
-import jdepend.framework.JDepend;
-import jdepend.framework.JavaPackage;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.regex.Pattern;
 
 import static org.jboss.apiviz.Constant.*;
 import static org.jboss.apiviz.EdgeType.*;
 
 /**
+ * The classes, packages and relationships the diagrams are generated from.
+ * A graph does not change once it is constructed, so the diagrams can be
+ * generated by many threads at the same time.
+ *
  * @author The APIviz Project (apiviz-dev@lists.jboss.org)
  * @author Trustin Lee (tlee@redhat.com)
  *
@@ -42,10 +44,61 @@ import static org.jboss.apiviz.EdgeType.*;
 public class ClassDocGraph {
 
     final RootDoc root;
-    private final Map<String, ClassDoc> nodes = new TreeMap<String, ClassDoc>();
-    private final Map<ClassDoc, Set<Edge>> edges = new HashMap<ClassDoc, Set<Edge>>();
-    private final Map<ClassDoc, Set<Edge>> reversedEdges = new HashMap<ClassDoc, Set<Edge>>();
-    private int nonconfiguredCategoryCount = 0;
+
+    /**
+     * Key = class (compared by identity)<br>
+     * Value = node id, an index into the node arrays below
+     */
+    private final Map<Doc, Integer> nodeIds = new IdentityHashMap<Doc, Integer>();
+
+    // Node ids are assigned in the order of the qualified names.
+    private ClassDoc[] nodeDocs;
+    private String[] nodeNames;
+    private NodeAttributes[] nodeAttributes;
+    private int[] nameRanks;
+    private int[] portraitRanks;
+    private int[] landscapeRanks;
+
+    // What the DOT writer needs for each node, so that a node rendered in
+    // many diagrams is labelled and escaped only once.
+    private PackageDoc[] nodePackages;
+    private String[] dotIds;
+    private String[] localLabels;
+    private String[] localTooltips;
+    private String[] foreignLabels;
+    private String[] foreignTooltips;
+
+    // Edge ids are assigned in the order the edges were discovered.
+    private Edge[] edgeDocs;
+    private int[] edgeSources;
+    private int[] edgeTargets;
+    private byte[] edgeTypes;
+    private int[] edgeRanks;
+
+    // Compressed sparse rows: the edges from (to) node n are
+    // outEdges[outOffsets[n] .. outOffsets[n + 1]) (inEdges[...]).
+    private int[] outOffsets;
+    private int[] outEdges;
+    private int[] inOffsets;
+    private int[] inEdges;
+
+    /**
+     * Key = package (compared by identity, like {@link #fetchSubgraph} does)<br>
+     * Value = the ids of the nodes in the package
+     */
+    private final Map<PackageDoc, int[]> packageMembers = new IdentityHashMap<PackageDoc, int[]>();
+
+    /**
+     * Key = class or package<br>
+     * Value = its compiled {@value Constant#TAG_EXCLUDE} rules
+     */
+    private final Map<Doc, ExclusionRules> exclusionRules = new IdentityHashMap<Doc, ExclusionRules>();
+
+    /**
+     * Key = package<br>
+     * Value = its APIviz tags
+     */
+    private final Map<Doc, NodeAttributes> attributes = new IdentityHashMap<Doc, NodeAttributes>();
 
     /**
      * Key = category name<br>
@@ -75,8 +128,32 @@ public class ClassDocGraph {
         }
 
         root.printNotice("Building graph for all classes...");
+        Map<String, ClassDoc> nodes = new TreeMap<String, ClassDoc>();
+        List<Edge> edges = new ArrayList<Edge>();
         for (ClassDoc node: root.classes()) {
-            addNode(node, true);
+            addNode(nodes, edges, node, true);
+        }
+
+        addNodes(nodes, edges);
+        addEdges(edges);
+        addPackageMembers(nodes);
+        addNonconfiguredCategories();
+        readTags();
+    }
+
+    /**
+     * Reads the tags the diagrams need up front, since javadoc parses them
+     * on demand, which is not safe to do from many threads at a time.
+     */
+    private void readTags() {
+        for (PackageDoc pkg: APIviz.getPackages(root).values()) {
+            getAttributes(pkg);
+            getExclusionRules(pkg);
+        }
+        for (int[] members: packageMembers.values()) {
+            for (int id: members) {
+                getExclusionRules(nodeDocs[id]);
+            }
         }
     }
 
@@ -87,27 +164,29 @@ public class ClassDocGraph {
         categories.put(categoryName, new CategoryOptions(categoryName, fillColor, lineColor));
     }
 
-    private void addNode(ClassDoc node, boolean addRelatedClasses) {
+    private void addNode(
+            Map<String, ClassDoc> nodes, List<Edge> edges,
+            ClassDoc node, boolean addRelatedClasses) {
         String key = node.qualifiedName();
         if (!nodes.containsKey(key)) {
             nodes.put(key, node);
-            edges.put(node, new TreeSet<Edge>());
         }
 
         if (addRelatedClasses) {
-            addRelatedClasses(node);
+            addRelatedClasses(nodes, edges, node);
         }
     }
 
-    private void addRelatedClasses(ClassDoc type) {
+    private void addRelatedClasses(
+            Map<String, ClassDoc> nodes, List<Edge> edges, ClassDoc type) {
         // Generalization
         ClassDoc superType = type.superclass();
         if (superType != null &&
             !superType.qualifiedName().equals("java.lang.Object") &&
             !superType.qualifiedName().equals("java.lang.Annotation") &&
             !superType.qualifiedName().equals("java.lang.Enum")) {
-            addNode(superType, false);
-            addEdge(new Edge(GENERALIZATION, type, superType));
+            addNode(nodes, edges, superType, false);
+            edges.add(new Edge(GENERALIZATION, type, superType));
         }
 
         // Realization
@@ -116,20 +195,20 @@ public class ClassDocGraph {
                 continue;
             }
 
-            addNode(i, false);
-            addEdge(new Edge(REALIZATION, type, i));
+            addNode(nodes, edges, i, false);
+            edges.add(new Edge(REALIZATION, type, i));
         }
 
         // Apply custom doclet tags.
         for (Tag t: type.tags()) {
             if (t.name().equals(TAG_USES)) {
-                addEdge(new Edge(root, DEPENDENCY, type, t.text()));
+                edges.add(new Edge(root, DEPENDENCY, type, t.text()));
             } else if (t.name().equals(TAG_HAS)) {
-                addEdge(new Edge(root, NAVIGABILITY, type, t.text()));
+                edges.add(new Edge(root, NAVIGABILITY, type, t.text()));
             } else if (t.name().equals(TAG_OWNS)) {
-                addEdge(new Edge(root, AGGREGATION, type, t.text()));
+                edges.add(new Edge(root, AGGREGATION, type, t.text()));
             } else if (t.name().equals(TAG_COMPOSED_OF)) {
-                addEdge(new Edge(root, COMPOSITION, type, t.text()));
+                edges.add(new Edge(root, COMPOSITION, type, t.text()));
             }
         }
 
@@ -146,14 +225,14 @@ public class ClassDocGraph {
 
             String a = type.qualifiedName();
             String b = t.referencedClass().qualifiedName();
-            addNode(t.referencedClass(), false);
+            addNode(nodes, edges, t.referencedClass(), false);
             if (a.compareTo(b) != 0) {
                 if (a.compareTo(b) < 0) {
-                    addEdge(new Edge(
+                    edges.add(new Edge(
                             root, SEE_ALSO, type,
                             b + " - - &#171;see also&#187;"));
                 } else {
-                    addEdge(new Edge(
+                    edges.add(new Edge(
                             root, SEE_ALSO, t.referencedClass(),
                             a + " - - &#171;see also&#187;"));
                 }
@@ -161,18 +240,205 @@ public class ClassDocGraph {
         }
     }
 
-    private void addEdge(Edge edge) {
-        edges.get(edge.getSource()).add(edge);
+    /**
+     * Interns the nodes and the edge endpoints.  Node ids follow the order of
+     * the qualified names, so that a node id doubles as the name order.
+     */
+    private void addNodes(Map<String, ClassDoc> nodes, List<Edge> edges) {
+        List<ClassDoc> docs = new ArrayList<ClassDoc>(nodes.values());
+        Map<Doc, Boolean> seen = new IdentityHashMap<Doc, Boolean>();
+        for (ClassDoc node: docs) {
+            seen.put(node, Boolean.TRUE);
+        }
+        for (Edge edge: edges) {
+            for (Doc endpoint: new Doc[] { edge.getSource(), edge.getTarget() }) {
+                if (seen.put(endpoint, Boolean.TRUE) == null) {
+                    docs.add((ClassDoc) endpoint);
+                }
+            }
+        }
+
+        final String[] names = new String[docs.size()];
+        Integer[] order = new Integer[docs.size()];
+        for (int i = 0; i < names.length; i ++) {
+            names[i] = docs.get(i).qualifiedName();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return names[a].compareTo(names[b]);
+            }
+        });
+
+        int nodeCount = names.length;
+        nodeDocs = new ClassDoc[nodeCount];
+        nodeNames = new String[nodeCount];
+        nodeAttributes = new NodeAttributes[nodeCount];
+        nameRanks = new int[nodeCount];
+        for (int id = 0; id < nodeCount; id ++) {
+            nodeDocs[id] = docs.get(order[id]);
+            nodeNames[id] = names[order[id]];
+            nodeAttributes[id] = new NodeAttributes(nodeDocs[id]);
+            nodeIds.put(nodeDocs[id], id);
+            if (id > 0) {
+                // Distinct classes can share a name, e.g. unresolved tag targets.
+                nameRanks[id] = nameRanks[id - 1];
+                if (!nodeNames[id].equals(nodeNames[id - 1])) {
+                    nameRanks[id] ++;
+                }
+            }
+        }
+
+        portraitRanks = rankNodes(true);
+        landscapeRanks = rankNodes(false);
+
+        nodePackages = new PackageDoc[nodeCount];
+        dotIds = new String[nodeCount];
+        localLabels = new String[nodeCount];
+        localTooltips = new String[nodeCount];
+        foreignLabels = new String[nodeCount];
+        foreignTooltips = new String[nodeCount];
+        for (int id = 0; id < nodeCount; id ++) {
+            ClassDoc node = nodeDocs[id];
+            nodePackages[id] = node.containingPackage();
+            dotIds[id] = nodeNames[id].replace('.', '_');
+            String stereotype = getStereotype(node, nodeAttributes[id]);
+            localLabels[id] = getNodeLabel(node, stereotype, false);
+            localTooltips[id] = escape(localLabels[id]);
+            foreignLabels[id] = getNodeLabel(node, stereotype, true);
+            foreignTooltips[id] = escape(foreignLabels[id]);
+        }
+    }
+
+    private int[] rankNodes(boolean portrait) {
+        // Sorting in the name order first keeps the ties in the name order.
+        List<ClassDoc> sorted = new ArrayList<ClassDoc>(Arrays.asList(nodeDocs));
+        Collections.sort(sorted, new ClassDocComparator(portrait));
+
+        int[] ranks = new int[nodeDocs.length];
+        for (int i = 0; i < ranks.length; i ++) {
+            ranks[nodeIds.get(sorted.get(i))] = i;
+        }
+        return ranks;
+    }
+
+    /**
+     * Builds the forward and reverse adjacency.  Like a {@link TreeSet} of
+     * {@link Edge}s per node, each row is sorted and keeps only the first of
+     * the edges that compare equal.
+     */
+    private void addEdges(List<Edge> edges) {
+        int edgeCount = edges.size();
+        edgeDocs = edges.toArray(new Edge[edgeCount]);
+        edgeSources = new int[edgeCount];
+        edgeTargets = new int[edgeCount];
+        edgeTypes = new byte[edgeCount];
+        edgeRanks = new int[edgeCount];
+
+        Integer[] order = new Integer[edgeCount];
+        for (int e = 0; e < edgeCount; e ++) {
+            edgeSources[e] = nodeIds.get(edgeDocs[e].getSource());
+            edgeTargets[e] = nodeIds.get(edgeDocs[e].getTarget());
+            edgeTypes[e] = (byte) edgeDocs[e].getType().ordinal();
+            order[e] = e;
+        }
+
+        // A stable sort, so the edges that compare equal stay in the
+        // order they were discovered.
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return edgeDocs[a].compareTo(edgeDocs[b]);
+            }
+        });
+
+        int[] sortedEdges = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i ++) {
+            int e = order[i];
+            sortedEdges[i] = e;
+            if (i > 0) {
+                int previous = order[i - 1];
+                edgeRanks[e] = edgeRanks[previous];
+                if (edgeDocs[e].compareTo(edgeDocs[previous]) != 0) {
+                    edgeRanks[e] ++;
+                }
+            }
+        }
+
+        outOffsets = new int[nodeDocs.length + 1];
+        outEdges = buildRows(sortedEdges, edgeSources, outOffsets);
+        inOffsets = new int[nodeDocs.length + 1];
+        inEdges = buildRows(sortedEdges, edgeTargets, inOffsets);
+    }
+
+    private int[] buildRows(int[] sortedEdges, int[] endpoints, int[] offsets) {
+        int nodeCount = offsets.length - 1;
+
+        // Count the distinct edges per row.  The edges arrive sorted,
+        // so the duplicates in a row are always adjacent.
+        boolean[] keep = new boolean[sortedEdges.length];
+        int[] lastRanks = new int[nodeCount];
+        Arrays.fill(lastRanks, -1);
+        for (int i = 0; i < sortedEdges.length; i ++) {
+            int e = sortedEdges[i];
+            int n = endpoints[e];
+            if (lastRanks[n] != edgeRanks[e]) {
+                lastRanks[n] = edgeRanks[e];
+                keep[i] = true;
+                offsets[n + 1] ++;
+            }
+        }
+
+        for (int n = 0; n < nodeCount; n ++) {
+            offsets[n + 1] += offsets[n];
+        }
+
+        int[] rows = new int[offsets[nodeCount]];
+        int[] positions = new int[nodeCount];
+        System.arraycopy(offsets, 0, positions, 0, nodeCount);
+        for (int i = 0; i < sortedEdges.length; i ++) {
+            if (keep[i]) {
+                int e = sortedEdges[i];
+                rows[positions[endpoints[e]] ++] = e;
+            }
+        }
+        return rows;
+    }
+
+    private void addPackageMembers(Map<String, ClassDoc> nodes) {
+        Map<PackageDoc, IntList> members = new IdentityHashMap<PackageDoc, IntList>();
+        for (ClassDoc node: nodes.values()) {
+            PackageDoc pkg = node.containingPackage();
+            IntList ids = members.get(pkg);
+            if (ids == null) {
+                ids = new IntList();
+                members.put(pkg, ids);
+            }
+            ids.add(nodeIds.get(node));
+        }
+
+        for (Map.Entry<PackageDoc, IntList> e: members.entrySet()) {
+            packageMembers.put(e.getKey(), e.getValue().toArray());
+        }
+    }
 
-        Set<Edge> reversedEdgeSubset = reversedEdges.get(edge.getTarget());
-        if (reversedEdgeSubset == null) {
-            reversedEdgeSubset = new TreeSet<Edge>();
-            reversedEdges.put((ClassDoc) edge.getTarget(), reversedEdgeSubset);
+    /**
+     * @param dependencies the packages each package depends on, keyed by the
+     *                     package name; a package which is not a key is
+     *                     left out of the diagram
+     */
+    public String getOverviewSummaryDiagram(Map<String, ? extends Collection<String>> dependencies) {
+        StringBuilder buf = new StringBuilder(16384);
+        try {
+            writeOverviewSummaryDiagram(dependencies, buf);
+        } catch (IOException e) {
+            // A StringBuilder does not throw an IOException.
+            throw new IllegalStateException(e);
         }
-        reversedEdgeSubset.add(edge);
+        return buf.toString();
     }
 
-    public String getOverviewSummaryDiagram(JDepend jdepend) {
+    public void writeOverviewSummaryDiagram(
+            Map<String, ? extends Collection<String>> dependencies, Appendable out) throws IOException {
         Map<String, PackageDoc> packages = new TreeMap<String, PackageDoc>(new Comparator<String>() {
             public int compare(String o1, String o2) {
                 return o2.compareTo(o1);
@@ -181,36 +447,11 @@ public class ClassDocGraph {
 
         Set<Edge> edgesToRender = new TreeSet<Edge>();
 
-        addPackageDependencies(jdepend, packages, edgesToRender);
+        addPackageDependencies(dependencies, packages, edgesToRender);
 
         // Replace direct dependencies with transitive dependencies
         // if possible to simplify the diagram.
-
-        //// Build the matrix first.
-        Map<Doc, Set<Doc>> dependencies = new HashMap<Doc, Set<Doc>>();
-        for (Edge edge: edgesToRender) {
-            Set<Doc> nextDependencies = dependencies.get(edge.getSource());
-            if (nextDependencies == null) {
-                nextDependencies = new HashSet<Doc>();
-                dependencies.put(edge.getSource(), nextDependencies);
-            }
-            nextDependencies.add(edge.getTarget());
-        }
-
-        //// Remove the edges which doesn't change the effective relationship
-        //// which can be calculated by indirect (transitive) dependency resolution.
-        for (int i = edgesToRender.size(); i > 0 ; i --) {
-            for (Edge edge: edgesToRender) {
-                if (isIndirectlyReachable(dependencies, edge.getSource(), edge.getTarget())) {
-                    edgesToRender.remove(edge);
-                    Set<Doc> targets = dependencies.get(edge.getSource());
-                    if (targets != null) {
-                        targets.remove(edge.getTarget());
-                    }
-                    break;
-                }
-            }
-        }
+        TransitiveReduction.reduce(edgesToRender);
 
         // Get the least common prefix to compact the diagram even further.
         int minPackageNameLen = Integer.MAX_VALUE;
@@ -251,8 +492,7 @@ public class ClassDocGraph {
             }
         }
 
-        StringBuilder buf = new StringBuilder(16384);
-        buf.append(
+        out.append(
                 "digraph APIVIZ {" + NEWLINE +
                 "rankdir=LR;" + NEWLINE +
                 "ranksep=0.3;" + NEWLINE +
@@ -269,123 +509,160 @@ public class ClassDocGraph {
                 "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
 
         for (PackageDoc pkg: packages.values()) {
-            renderPackage(buf, pkg, prefixLen);
+            renderPackage(out, pkg, prefixLen);
         }
 
         for (Edge edge: edgesToRender) {
-            renderEdge(null, buf, edge);
+            renderEdge(null, out, edge);
         }
 
-        buf.append("}" + NEWLINE);
-
-        return buf.toString();
+        out.append("}" + NEWLINE);
     }
 
-    @SuppressWarnings("unchecked")
     private void addPackageDependencies(
-            JDepend jdepend, Map<String, PackageDoc> packages, Set<Edge> edgesToRender) {
+            Map<String, ? extends Collection<String>> dependencies,
+            Map<String, PackageDoc> packages, Set<Edge> edgesToRender) {
 
         Map<String, PackageDoc> allPackages = APIviz.getPackages(root);
         for (String pname: allPackages.keySet()) {
-            if (isHidden(allPackages.get(pname))) {
+            if (getAttributes(allPackages.get(pname)).isHidden()) {
                 continue;
             }
 
-            JavaPackage pkg = jdepend.getPackage(pname);
-            if (pkg == null) {
+            Collection<String> epkgs = dependencies.get(pname);
+            if (epkgs == null) {
                 continue;
             }
 
             packages.put(pname, allPackages.get(pname));
 
-            Collection<JavaPackage> epkgs = pkg.getEfferents();
-            if (epkgs == null) {
-                continue;
-            }
-
-            for (JavaPackage epkg: epkgs) {
-                if (isHidden(allPackages.get(epkg.getName()))) {
+            for (String epkg: epkgs) {
+                PackageDoc target = allPackages.get(epkg);
+                if (target == null || getAttributes(target).isHidden()) {
                     continue;
                 }
-                addPackageDependency(edgesToRender, allPackages.get(pname), allPackages.get(epkg.getName()));
+                addPackageDependency(edgesToRender, allPackages.get(pname), target);
             }
         }
     }
 
-    static boolean isHidden(Doc node) {
-        if (node.tags(TAG_HIDDEN).length > 0) {
-            return true;
-        }
-
-        Tag[] tags = node.tags(TAG_EXCLUDE);
-        if (tags == null) {
-            return false;
-        }
+    /**
+     * Returns the packages each package depends on, as found in the types of
+     * the super classes, interfaces, fields, constructors and methods of its
+     * classes and in their imports, keyed by the package name.  Unlike the
+     * dependencies found in the class files, the types only used in the
+     * method bodies are not taken into account.
+     */
+    public Map<String, Set<String>> getSourceDependencies() {
+        Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+        for (ClassDoc c: root.classes()) {
+            PackageDoc pkg = c.containingPackage();
+            if (pkg == null || pkg.name() == null) {
+                continue;
+            }
 
-        for (Tag t: tags) {
-            if (t.text() == null || t.text().trim().length() == 0) {
-                return true;
+            Set<String> targets = dependencies.get(pkg.name());
+            if (targets == null) {
+                targets = new HashSet<String>();
+                dependencies.put(pkg.name(), targets);
             }
+            addSourceDependencies(targets, c);
+            targets.remove(pkg.name());
         }
-
-        return false;
+        return dependencies;
     }
 
-    private static void addPackageDependency(
-            Set<Edge> edgesToRender, PackageDoc source, PackageDoc target) {
-        if (source != target && source.isIncluded() && target.isIncluded()) {
-            edgesToRender.add(
-                    new Edge(EdgeType.DEPENDENCY, source, target));
+    @SuppressWarnings("deprecation")
+    private static void addSourceDependencies(Set<String> targets, ClassDoc c) {
+        addSourceDependency(targets, c.superclassType());
+        for (Type t: c.interfaceTypes()) {
+            addSourceDependency(targets, t);
+        }
+        for (FieldDoc f: c.fields(false)) {
+            addSourceDependency(targets, f.type());
+        }
+        for (ConstructorDoc m: c.constructors(false)) {
+            addSourceDependencies(targets, m);
+        }
+        for (MethodDoc m: c.methods(false)) {
+            addSourceDependencies(targets, m);
+            addSourceDependency(targets, m.returnType());
+        }
+        for (ClassDoc i: c.importedClasses()) {
+            addSourceDependency(targets, i);
         }
     }
 
-    private static boolean isIndirectlyReachable(Map<Doc, Set<Doc>> dependencyGraph, Doc source, Doc target) {
-        Set<Doc> intermediaryTargets = dependencyGraph.get(source);
-        if (intermediaryTargets == null || intermediaryTargets.isEmpty()) {
-            return false;
+    private static void addSourceDependencies(Set<String> targets, ExecutableMemberDoc m) {
+        for (Parameter p: m.parameters()) {
+            addSourceDependency(targets, p.type());
         }
-
-        Set<Doc> visited = new HashSet<Doc>();
-        visited.add(source);
-
-        for (Doc t: intermediaryTargets) {
-            if (t == target) {
-                continue;
-            }
-            if (isIndirectlyReachable(dependencyGraph, t, target, visited)) {
-                return true;
-            }
+        for (Type t: m.thrownExceptionTypes()) {
+            addSourceDependency(targets, t);
         }
-        return false;
     }
 
-    private static boolean isIndirectlyReachable(Map<Doc, Set<Doc>> dependencyGraph, Doc source, Doc target, Set<Doc> visited) {
-        if (visited.contains(source)) {
-            // Evade cyclic dependency.
-            return false;
+    private static void addSourceDependency(Set<String> targets, Type type) {
+        if (type == null) {
+            return;
+        }
+
+        // The erasure of a type variable, or the element type of an array
+        ClassDoc c = type.asClassDoc();
+        if (c != null && c.containingPackage() != null) {
+            targets.add(c.containingPackage().name());
         }
-        visited.add(source);
 
-        Set<Doc> intermediaryTargets = dependencyGraph.get(source);
-        if (intermediaryTargets == null || intermediaryTargets.isEmpty()) {
-            return false;
+        ParameterizedType pt = type.asParameterizedType();
+        if (pt != null) {
+            for (Type t: pt.typeArguments()) {
+                addSourceDependency(targets, t);
+            }
         }
 
-        for (Doc t: intermediaryTargets) {
-            if (t == target) {
-                return true;
+        WildcardType wt = type.asWildcardType();
+        if (wt != null) {
+            for (Type t: wt.extendsBounds()) {
+                addSourceDependency(targets, t);
             }
+            for (Type t: wt.superBounds()) {
+                addSourceDependency(targets, t);
+            }
+        }
+    }
 
-            if (isIndirectlyReachable(dependencyGraph, t, target, visited)) {
-                return true;
+    NodeAttributes getAttributes(Doc node) {
+        synchronized (attributes) {
+            NodeAttributes a = attributes.get(node);
+            if (a == null) {
+                a = new NodeAttributes(node);
+                attributes.put(node, a);
             }
+            return a;
+        }
+    }
+
+    private static void addPackageDependency(
+            Set<Edge> edgesToRender, PackageDoc source, PackageDoc target) {
+        if (source != target && source.isIncluded() && target.isIncluded()) {
+            edgesToRender.add(
+                    new Edge(EdgeType.DEPENDENCY, source, target));
         }
-        return false;
     }
 
     public String getPackageSummaryDiagram(PackageDoc pkg) {
         StringBuilder buf = new StringBuilder(16384);
-        buf.append(
+        try {
+            writePackageSummaryDiagram(pkg, buf);
+        } catch (IOException e) {
+            // A StringBuilder does not throw an IOException.
+            throw new IllegalStateException(e);
+        }
+        return buf.toString();
+    }
+
+    public void writePackageSummaryDiagram(PackageDoc pkg, Appendable out) throws IOException {
+        out.append(
                 "digraph APIVIZ {" + NEWLINE +
                 "rankdir=LR;" + NEWLINE +
                 "ranksep=0.3;" + NEWLINE +
@@ -401,25 +678,57 @@ public class ClassDocGraph {
                 "node [shape=box, fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
 
-        Map<String, ClassDoc> nodesToRender = new TreeMap<String, ClassDoc>();
+        Subgraph subgraph = fetchPackageSummary(pkg);
+        renderSubgraph(pkg, null, out, subgraph.getNodes(), subgraph.getEdges(), true);
 
-        Set<Edge> edgesToRender = new TreeSet<Edge>();
+        out.append("}" + NEWLINE);
+    }
 
-        for (ClassDoc node: nodes.values()) {
-            fetchSubgraph(pkg, node, nodesToRender, edgesToRender, true, false, true);
-        }
+    /**
+     * Returns the size of the package summary diagram of the specified
+     * package without generating it.
+     */
+    CostModel.Size measurePackageSummaryDiagram(PackageDoc pkg) {
+        return measure(fetchPackageSummary(pkg));
+    }
 
-        renderSubgraph(pkg, null, buf, nodesToRender, edgesToRender, true);
+    private Subgraph fetchPackageSummary(PackageDoc pkg) {
+        Subgraph subgraph = new Subgraph();
 
-        buf.append("}" + NEWLINE);
+        // Only the nodes in the package can contribute to the subgraph.
+        int[] members = packageMembers.get(pkg);
+        if (members != null) {
+            for (int node: members) {
+                fetchSubgraph(pkg, node, subgraph, true, false, true);
+            }
+        }
+        return subgraph;
+    }
 
-        return buf.toString();
+    /**
+     * Gives every category without a color of its own the next unused color
+     * combination.  The packages come first as the overview diagram is
+     * generated first, and then the classes in the order of their names, so
+     * that the colors do not depend on the order the diagrams are generated
+     * in.
+     */
+    private void addNonconfiguredCategories() {
+        int nonconfiguredCategoryCount = 0;
+        for (PackageDoc pkg: APIviz.getPackages(root).values()) {
+            NodeAttributes attrs = getAttributes(pkg);
+            if (!attrs.isHidden()) {
+                nonconfiguredCategoryCount = addNonconfiguredCategory(attrs, nonconfiguredCategoryCount);
+            }
+        }
+        for (NodeAttributes attrs: nodeAttributes) {
+            nonconfiguredCategoryCount = addNonconfiguredCategory(attrs, nonconfiguredCategoryCount);
+        }
     }
 
-    private void checkCategoryExistance(Doc node) {
+    private int addNonconfiguredCategory(NodeAttributes attrs, int nonconfiguredCategoryCount) {
         //check the if the category for this class exists
-        if (node.tags(TAG_CATEGORY).length > 0 && !categories.containsKey(node.tags(TAG_CATEGORY)[0].text())) {
-            final String categoryName = node.tags(TAG_CATEGORY)[0].text();
+        final String categoryName = attrs.getCategory();
+        if (categoryName != null && !categories.containsKey(categoryName)) {
             if (ColorCombination.values().length > nonconfiguredCategoryCount) {
                 categories.put(categoryName, new CategoryOptions(categoryName, ColorCombination.values()[nonconfiguredCategoryCount]));
                 nonconfiguredCategoryCount++;
@@ -427,202 +736,138 @@ public class ClassDocGraph {
                 categories.put(categoryName, new CategoryOptions(categoryName, "#FFFFFF", null));
             }
         }
+        return nonconfiguredCategoryCount;
+    }
+
+    private ExclusionRules getExclusionRules(Doc doc) {
+        synchronized (exclusionRules) {
+            ExclusionRules rules = exclusionRules.get(doc);
+            if (rules == null) {
+                rules = ExclusionRules.parse(doc);
+                exclusionRules.put(doc, rules);
+            }
+            return rules;
+        }
     }
 
     private void fetchSubgraph(
-            PackageDoc pkg, ClassDoc cls,
-            Map<String, ClassDoc> nodesToRender, Set<Edge> edgesToRender,
+            PackageDoc pkg, int cls, Subgraph subgraph,
             boolean useHidden, boolean useSee, boolean forceInherit) {
 
-        if (useHidden && isHidden(cls)) {
+        NodeAttributes clsAttributes = nodeAttributes[cls];
+        if (useHidden && clsAttributes.isHidden()) {
             return;
         }
 
-        if (forceInherit) {
-            for (Tag t: pkg.tags(TAG_EXCLUDE)) {
-                if (t.text() == null || t.text().trim().length() == 0) {
-                    continue;
-                }
+        if (forceInherit && getExclusionRules(pkg).excludes(nodeNames[cls])) {
+            return;
+        }
 
-                if (Pattern.compile(t.text().trim()).matcher(cls.qualifiedName()).find()) {
-                    return;
-                }
+        if (nodeDocs[cls].containingPackage() == pkg) {
+            ExclusionRules packageRules = ExclusionRules.NONE;
+            if (forceInherit || clsAttributes.isInherit()) {
+                packageRules = getExclusionRules(pkg);
             }
-        }
+            ExclusionRules classRules = getExclusionRules(nodeDocs[cls]);
 
-        if (cls.containingPackage() == pkg) {
-            Set<Edge> directEdges = edges.get(cls);
-            nodesToRender.put(cls.qualifiedName(), cls);
-            for (Edge edge: directEdges) {
-                if (!useSee && edge.getType() == SEE_ALSO) {
+            subgraph.addNode(nameRanks[cls], cls);
+            for (int i = outOffsets[cls]; i < outOffsets[cls + 1]; i ++) {
+                int edge = outEdges[i];
+                if (!useSee && edgeTypes[edge] == SEE_ALSO.ordinal()) {
                     continue;
                 }
 
-                ClassDoc source = (ClassDoc) edge.getSource();
-                ClassDoc target = (ClassDoc) edge.getTarget();
-
-                boolean excluded = false;
-                if (forceInherit || cls.tags(TAG_INHERIT).length > 0) {
-                    for (Tag t: pkg.tags(TAG_EXCLUDE)) {
-                        if (t.text() == null || t.text().trim().length() == 0) {
-                            continue;
-                        }
-
-                        Pattern p = Pattern.compile(t.text().trim());
-
-                        if (p.matcher(source.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                        if (p.matcher(target.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                    }
-                    if (excluded) {
-                        continue;
-                    }
-                }
-
-                for (Tag t: cls.tags(TAG_EXCLUDE)) {
-                    if (t.text() == null || t.text().trim().length() == 0) {
-                        continue;
-                    }
-
-                    Pattern p = Pattern.compile(t.text().trim());
+                fetchEdge(edge, packageRules, classRules, subgraph, useHidden);
+            }
 
-                    if (p.matcher(source.qualifiedName()).find()) {
-                        excluded = true;
-                        break;
-                    }
-                    if (p.matcher(target.qualifiedName()).find()) {
-                        excluded = true;
-                        break;
-                    }
-                }
-                if (excluded) {
+            for (int i = inOffsets[cls]; i < inOffsets[cls + 1]; i ++) {
+                int edge = inEdges[i];
+                if (!useSee && edgeTypes[edge] == SEE_ALSO.ordinal()) {
                     continue;
                 }
 
-                if (!useHidden || !isHidden(source) && !isHidden(target)) {
-                    edgesToRender.add(edge);
-                }
-                if (!useHidden || !isHidden(source)) {
-                    nodesToRender.put(source.qualifiedName(), source);
-                }
-                if (!useHidden || !isHidden(target)) {
-                    nodesToRender.put(target.qualifiedName(), target);
+                if (clsAttributes.isExcludeSubtypes() &&
+                        (edgeTypes[edge] == GENERALIZATION.ordinal() ||
+                         edgeTypes[edge] == REALIZATION.ordinal())) {
+                    continue;
                 }
-            }
 
-            Set<Edge> reversedDirectEdges = reversedEdges.get(cls);
-            if (reversedDirectEdges != null) {
-                for (Edge edge: reversedDirectEdges) {
-                    if (!useSee && edge.getType() == SEE_ALSO) {
-                        continue;
-                    }
+                fetchEdge(edge, packageRules, classRules, subgraph, useHidden);
+            }
+        }
+    }
 
-                    if (cls.tags(TAG_EXCLUDE_SUBTYPES).length > 0 &&
-                            (edge.getType() == EdgeType.GENERALIZATION ||
-                             edge.getType() == EdgeType.REALIZATION)) {
-                        continue;
-                    }
+    private void fetchEdge(
+            int edge, ExclusionRules packageRules, ExclusionRules classRules,
+            Subgraph subgraph, boolean useHidden) {
 
-                    ClassDoc source = (ClassDoc) edge.getSource();
-                    ClassDoc target = (ClassDoc) edge.getTarget();
-
-                    boolean excluded = false;
-                    if (forceInherit || cls.tags(TAG_INHERIT).length > 0) {
-                        for (Tag t: pkg.tags(TAG_EXCLUDE)) {
-                            if (t.text() == null || t.text().trim().length() == 0) {
-                                continue;
-                            }
-
-                            Pattern p = Pattern.compile(t.text().trim());
-
-                            if (p.matcher(source.qualifiedName()).find()) {
-                                excluded = true;
-                                break;
-                            }
-                            if (p.matcher(target.qualifiedName()).find()) {
-                                excluded = true;
-                                break;
-                            }
-                        }
-                        if (excluded) {
-                            continue;
-                        }
-                    }
+        int source = edgeSources[edge];
+        int target = edgeTargets[edge];
 
-                    for (Tag t: cls.tags(TAG_EXCLUDE)) {
-                        if (t.text() == null || t.text().trim().length() == 0) {
-                            continue;
-                        }
-
-                        Pattern p = Pattern.compile(t.text().trim());
-
-                        if (p.matcher(source.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                        if (p.matcher(target.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                    }
-                    if (excluded) {
-                        continue;
-                    }
+        if (packageRules.excludes(nodeNames[source]) ||
+            packageRules.excludes(nodeNames[target]) ||
+            classRules.excludes(nodeNames[source]) ||
+            classRules.excludes(nodeNames[target])) {
+            return;
+        }
 
-                    if (!useHidden || !isHidden(source) && !isHidden(target)) {
-                        edgesToRender.add(edge);
-                    }
-                    if (!useHidden || !isHidden(source)) {
-                        nodesToRender.put(source.qualifiedName(), source);
-                    }
-                    if (!useHidden || !isHidden(target)) {
-                        nodesToRender.put(target.qualifiedName(), target);
-                    }
-                }
-            }
+        boolean sourceHidden = useHidden && nodeAttributes[source].isHidden();
+        boolean targetHidden = useHidden && nodeAttributes[target].isHidden();
+        if (!sourceHidden && !targetHidden) {
+            subgraph.addEdge(edgeRanks[edge], edge);
+        }
+        if (!sourceHidden) {
+            subgraph.addNode(nameRanks[source], source);
+        }
+        if (!targetHidden) {
+            subgraph.addNode(nameRanks[target], target);
         }
     }
 
     public String getClassDiagram(ClassDoc cls) {
-        PackageDoc pkg = cls.containingPackage();
+        StringBuilder buf = new StringBuilder(4096);
+        try {
+            writeClassDiagram(cls, buf);
+        } catch (IOException e) {
+            // A StringBuilder does not throw an IOException.
+            throw new IllegalStateException(e);
+        }
+        return buf.toString();
+    }
 
-        StringBuilder buf = new StringBuilder(16384);
-        Map<String, ClassDoc> nodesToRender = new TreeMap<String, ClassDoc>();
-        Set<Edge> edgesToRender = new TreeSet<Edge>();
+    public void writeClassDiagram(ClassDoc cls, Appendable out) throws IOException {
+        PackageDoc pkg = cls.containingPackage();
+        int clsId = nodeIds.get(cls);
 
-        fetchSubgraph(pkg, cls, nodesToRender, edgesToRender, false, true, false);
+        Subgraph subgraph = fetchClassDiagram(cls);
+        int[] nodesToRender = subgraph.getNodes();
+        int[] edgesToRender = subgraph.getEdges();
 
-        buf.append("digraph APIVIZ {" + NEWLINE);
+        out.append("digraph APIVIZ {" + NEWLINE);
 
         // Determine the graph orientation automatically.
         int nodesAbove = 0;
         int nodesBelow = 0;
-        for (Edge e: edgesToRender) {
-            if (e.getType().isReversed()) {
-                if (e.getSource() == cls) {
+        for (int e: edgesToRender) {
+            if (edgeDocs[e].getType().isReversed()) {
+                if (edgeSources[e] == clsId) {
                     nodesAbove ++;
                 } else {
                     nodesBelow ++;
                 }
             } else {
-                if (e.getSource() == cls) {
+                if (edgeSources[e] == clsId) {
                     nodesBelow ++;
                 } else {
                     nodesAbove ++;
                 }
             }
         }
-
         boolean portrait;
         if (Math.max(nodesAbove, nodesBelow) <= 5) {
             // Landscape looks better usually up to 5.
             // There are just a few subtypes and supertypes.
-            buf.append(
+            out.append(
                     "rankdir=TB;" + NEWLINE +
                     "ranksep=0.4;" + NEWLINE +
                     "nodesep=0.3;" + NEWLINE);
@@ -630,14 +875,14 @@ public class ClassDocGraph {
         } else {
             // Portrait looks better.
             // There are too many subtypes or supertypes.
-            buf.append(
+            out.append(
                     "rankdir=LR;" + NEWLINE +
                     "ranksep=1.0;" + NEWLINE +
                     "nodesep=0.2;" + NEWLINE);
             portrait = true;
         }
 
-        buf.append(
+        out.append(
                 "mclimit=128;" + NEWLINE +
                 "outputorder=edgesfirst;" + NEWLINE +
                 "center=1;" + NEWLINE +
@@ -649,132 +894,193 @@ public class ClassDocGraph {
                 "node [shape=box, fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
 
-        renderSubgraph(pkg, cls, buf, nodesToRender, edgesToRender, portrait);
+        renderSubgraph(pkg, cls, out, nodesToRender, edgesToRender, portrait);
 
-        buf.append("}" + NEWLINE);
+        out.append("}" + NEWLINE);
+    }
 
-        return buf.toString();
+    /**
+     * Returns the size of the class diagram of the specified class without
+     * generating it.
+     */
+    CostModel.Size measureClassDiagram(ClassDoc cls) {
+        return measure(fetchClassDiagram(cls));
+    }
+
+    private Subgraph fetchClassDiagram(ClassDoc cls) {
+        Subgraph subgraph = new Subgraph();
+        fetchSubgraph(cls.containingPackage(), nodeIds.get(cls), subgraph, false, true, false);
+        return subgraph;
+    }
+
+    /**
+     * Returns the size of the diagram the specified subgraph renders to,
+     * i.e. what {@link CostModel#measure(CharSequence)} would return for
+     * its source.
+     */
+    private CostModel.Size measure(Subgraph subgraph) {
+        // One node per name, in the name order
+        int[] nodes = subgraph.getNodes();
+        int[] nodeRanks = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i ++) {
+            nodeRanks[i] = nameRanks[nodes[i]];
+        }
+
+        int[] edges = subgraph.getEdges();
+        int[] tails = new int[edges.length];
+        int[] heads = new int[edges.length];
+        for (int i = 0; i < edges.length; i ++) {
+            int e = edges[i];
+            int source = Arrays.binarySearch(nodeRanks, nameRanks[edgeSources[e]]);
+            int target = Arrays.binarySearch(nodeRanks, nameRanks[edgeTargets[e]]);
+            // The same direction renderEdge() writes the edge in
+            if (edgeDocs[e].getType().isReversed()) {
+                tails[i] = target;
+                heads[i] = source;
+            } else {
+                tails[i] = source;
+                heads[i] = target;
+            }
+        }
+        return CostModel.measure(nodes.length, tails, heads);
     }
 
     private void renderSubgraph(PackageDoc pkg, ClassDoc cls,
-            StringBuilder buf, Map<String, ClassDoc> nodesToRender,
-            Set<Edge> edgesToRender, boolean portrait) {
+            Appendable out, int[] nodesToRender,
+            int[] edgesToRender, boolean portrait) throws IOException {
 
-        List<ClassDoc> nodesToRenderCopy = new ArrayList<ClassDoc>(nodesToRender.values());
-        Collections.sort(nodesToRenderCopy, new ClassDocComparator(portrait));
+        // Same order as sorting with a ClassDocComparator.
+        int[] ranks = portrait? portraitRanks : landscapeRanks;
+        long[] sortedNodes = new long[nodesToRender.length];
+        for (int i = 0; i < nodesToRender.length; i ++) {
+            int node = nodesToRender[i];
+            sortedNodes[i] = (long) ranks[node] << 32 | node;
+        }
+        Arrays.sort(sortedNodes);
 
-        for (ClassDoc node: nodesToRenderCopy) {
-            renderClass(pkg, cls, buf, node);
+        for (long node: sortedNodes) {
+            renderClass(pkg, cls, out, (int) node);
         }
 
-        for (Edge edge: edgesToRender) {
-            renderEdge(pkg, buf, edge);
+        for (int edge: edgesToRender) {
+            int source = edgeSources[edge];
+            int target = edgeTargets[edge];
+            renderEdge(out, edgeDocs[edge], dotIds[source], dotIds[target],
+                    getLineColor(pkg, nodeDocs[source], target),
+                    getFontColor(pkg, nodePackages[target]));
         }
     }
 
     private  void renderPackage(
-            StringBuilder buf, PackageDoc pkg, int prefixLen) {
-        checkCategoryExistance(pkg);
-
+            Appendable out, PackageDoc pkg, int prefixLen) throws IOException {
         String href = pkg.name().replace('.', '/') + "/package-summary.html";
-        buf.append(getNodeId(pkg));
-        buf.append(" [label=\"");
-        buf.append(pkg.name().substring(prefixLen));
-        buf.append("\", style=\"filled");
-        if (pkg.tags("@deprecated").length > 0) {
-            buf.append(",dotted");
-        }
-        buf.append("\", fillcolor=\"");
-        buf.append(getFillColor(pkg));
-        buf.append("\", href=\"");
-        buf.append(href);
-        buf.append("\"];");
-        buf.append(NEWLINE);
+        out.append(getNodeId(pkg));
+        out.append(" [label=\"");
+        out.append(pkg.name(), prefixLen, pkg.name().length());
+        out.append("\", style=\"filled");
+        if (getAttributes(pkg).isDeprecated()) {
+            out.append(",dotted");
+        }
+        out.append("\", fillcolor=\"");
+        out.append(getFillColor(pkg));
+        out.append("\", href=\"");
+        out.append(href);
+        out.append("\"];");
+        out.append(NEWLINE);
     }
 
-    private void renderClass(PackageDoc pkg, ClassDoc cls, StringBuilder buf, ClassDoc node) {
-        checkCategoryExistance(node);
+    private void renderClass(PackageDoc pkg, ClassDoc cls, Appendable out, int nodeId) throws IOException {
+        ClassDoc node = nodeDocs[nodeId];
+        NodeAttributes attrs = nodeAttributes[nodeId];
 
-        String fillColor = getFillColor(pkg, cls, node);
-        String lineColor = getLineColor(pkg, cls, node);
-        String fontColor = getFontColor(pkg, node);
+        String fillColor = getFillColor(pkg, cls, nodeId);
+        String lineColor = getLineColor(pkg, cls, nodeId);
+        String fontColor = getFontColor(pkg, nodePackages[nodeId]);
         String href = getPath(pkg, node);
 
-        buf.append(getNodeId(node));
-        buf.append(" [label=\"");
-        buf.append(getNodeLabel(pkg, node));
-        buf.append("\", tooltip=\"");
-        buf.append(escape(getNodeLabel(pkg, node)));
-        buf.append("\"");
+        boolean local = nodePackages[nodeId] == pkg;
+        out.append(dotIds[nodeId]);
+        out.append(" [label=\"");
+        out.append(local? localLabels[nodeId] : foreignLabels[nodeId]);
+        out.append("\", tooltip=\"");
+        out.append(local? localTooltips[nodeId] : foreignTooltips[nodeId]);
+        out.append("\"");
         if (node.isAbstract() && !node.isInterface()) {
-            buf.append(", fontname=\"");
-            buf.append(ITALIC_FONT);
-            buf.append("\"");
+            out.append(", fontname=\"");
+            out.append(ITALIC_FONT);
+            out.append("\"");
         }
-        buf.append(", style=\"filled");
-        if (node.tags("@deprecated").length > 0) {
-            buf.append(",dotted");
+        out.append(", style=\"filled");
+        if (attrs.isDeprecated()) {
+            out.append(",dotted");
         }
-        buf.append("\", color=\"");
-        buf.append(lineColor);
-        buf.append("\", fontcolor=\"");
-        buf.append(fontColor);
-        buf.append("\", fillcolor=\"");
-        buf.append(fillColor);
+        out.append("\", color=\"");
+        out.append(lineColor);
+        out.append("\", fontcolor=\"");
+        out.append(fontColor);
+        out.append("\", fillcolor=\"");
+        out.append(fillColor);
 
         if (href != null) {
-            buf.append("\", href=\"");
-            buf.append(href);
+            out.append("\", href=\"");
+            out.append(href);
         }
 
-        buf.append("\"];");
-        buf.append(NEWLINE);
+        out.append("\"];");
+        out.append(NEWLINE);
     }
 
-    private void renderEdge(PackageDoc pkg, StringBuilder buf, Edge edge) {
+    private void renderEdge(PackageDoc pkg, Appendable out, Edge edge) throws IOException {
+        renderEdge(out, edge,
+                getNodeId(edge.getSource()), getNodeId(edge.getTarget()),
+                getLineColor(pkg, edge), getFontColor(pkg, edge));
+    }
+
+    private static void renderEdge(
+            Appendable out, Edge edge, String sourceId, String targetId,
+            String lineColor, String fontColor) throws IOException {
         EdgeType type = edge.getType();
-        String lineColor = getLineColor(pkg, edge);
-        String fontColor = getFontColor(pkg, edge);
 
         // Graphviz lays out nodes upside down - adjust for
         // important relationships.
         boolean reverse = edge.getType().isReversed();
 
         if (reverse) {
-            buf.append(getNodeId(edge.getTarget()));
-            buf.append(" -> ");
-            buf.append(getNodeId(edge.getSource()));
-            buf.append(" [arrowhead=\"");
-            buf.append(type.getArrowTail());
-            buf.append("\", arrowtail=\"");
-            buf.append(type.getArrowHead() == null? (edge.isOneway()? "open" : "none") : type.getArrowHead());
+            out.append(targetId);
+            out.append(" -> ");
+            out.append(sourceId);
+            out.append(" [arrowhead=\"");
+            out.append(type.getArrowTail());
+            out.append("\", arrowtail=\"");
+            out.append(type.getArrowHead() == null? (edge.isOneway()? "open" : "none") : type.getArrowHead());
         } else {
-            buf.append(getNodeId(edge.getSource()));
-            buf.append(" -> ");
-            buf.append(getNodeId(edge.getTarget()));
-            buf.append(" [arrowhead=\"");
-            buf.append(type.getArrowHead() == null? (edge.isOneway()? "open" : "none") : type.getArrowHead());
-            buf.append("\", arrowtail=\"");
-            buf.append(type.getArrowTail());
-        }
-
-        buf.append("\", style=\"" + type.getStyle());
-        buf.append("\", dir=\"both");
-        buf.append("\", color=\"");
-        buf.append(lineColor);
-        buf.append("\", fontcolor=\"");
-        buf.append(fontColor);
-        buf.append("\", label=\"");
-        buf.append(escape(edge.getEdgeLabel()));
-        buf.append("\", headlabel=\"");
-        buf.append(escape(edge.getTargetLabel()));
-        buf.append("\", taillabel=\"");
-        buf.append(escape(edge.getSourceLabel()));
-        buf.append("\" ];");
-        buf.append(NEWLINE);
+            out.append(sourceId);
+            out.append(" -> ");
+            out.append(targetId);
+            out.append(" [arrowhead=\"");
+            out.append(type.getArrowHead() == null? (edge.isOneway()? "open" : "none") : type.getArrowHead());
+            out.append("\", arrowtail=\"");
+            out.append(type.getArrowTail());
+        }
+
+        out.append("\", style=\"");
+        out.append(type.getStyle());
+        out.append("\", dir=\"both");
+        out.append("\", color=\"");
+        out.append(lineColor);
+        out.append("\", fontcolor=\"");
+        out.append(fontColor);
+        out.append("\", label=\"");
+        out.append(escape(edge.getEdgeLabel()));
+        out.append("\", headlabel=\"");
+        out.append(escape(edge.getTargetLabel()));
+        out.append("\", taillabel=\"");
+        out.append(escape(edge.getSourceLabel()));
+        out.append("\" ];");
+        out.append(NEWLINE);
     }
 
-    private static String getStereotype(ClassDoc node) {
+    private static String getStereotype(ClassDoc node, NodeAttributes attrs) {
         String stereotype = node.isInterface()? "interface" : null;
         if (node.isException() || node.isError()) {
             stereotype = "exception";
@@ -786,8 +1092,8 @@ public class ClassDocGraph {
             stereotype = "static";
         }
 
-        if (node.tags(TAG_STEREOTYPE).length > 0) {
-            stereotype = node.tags(TAG_STEREOTYPE)[0].text();
+        if (attrs.getStereotype() != null) {
+            stereotype = attrs.getStereotype();
         }
 
         return escape(stereotype);
@@ -811,36 +1117,39 @@ public class ClassDocGraph {
     }
 
     private String getFillColor(PackageDoc pkg) {
+        NodeAttributes attrs = getAttributes(pkg);
         String color = "white";
-        if (pkg.tags(TAG_CATEGORY).length > 0 && categories.containsKey(pkg.tags(TAG_CATEGORY)[0].text())) {
-            color = categories.get(pkg.tags(TAG_CATEGORY)[0].text()).getFillColor();
+        if (attrs.getCategory() != null && categories.containsKey(attrs.getCategory())) {
+            color = categories.get(attrs.getCategory()).getFillColor();
         }
-        if (pkg.tags(TAG_LANDMARK).length > 0) {
+        if (attrs.isLandmark()) {
             color = "khaki1";
         }
         return color;
     }
 
-    private String getFillColor(PackageDoc pkg, ClassDoc cls, ClassDoc node) {
+    private String getFillColor(PackageDoc pkg, ClassDoc cls, int nodeId) {
+        ClassDoc node = nodeDocs[nodeId];
+        NodeAttributes attrs = nodeAttributes[nodeId];
         String color = "white";
         if (cls == null) {
             //we are rendering for a package summary since there is no cls
 
             //see if the node has a fill color
-            if (node.tags(TAG_CATEGORY).length > 0 && categories.containsKey(node.tags(TAG_CATEGORY)[0].text())) {
-                color = categories.get(node.tags(TAG_CATEGORY)[0].text()).getFillColor();
+            if (attrs.getCategory() != null && categories.containsKey(attrs.getCategory())) {
+                color = categories.get(attrs.getCategory()).getFillColor();
             }
 
             //override any previous values if a landmark is set
-            if (node.containingPackage() == pkg && node.tags(TAG_LANDMARK).length > 0) {
+            if (node.containingPackage() == pkg && attrs.isLandmark()) {
                 color = "khaki1";
             }
         } else if (cls == node) {
             //this is class we are rending the class diagram for
             color = "khaki1";
-        } else if (node.tags(TAG_CATEGORY).length > 0 && categories.containsKey(node.tags(TAG_CATEGORY)[0].text())) {
+        } else if (attrs.getCategory() != null && categories.containsKey(attrs.getCategory())) {
             //not the class for the class diagram so use its fill color
-            color = categories.get(node.tags(TAG_CATEGORY)[0].text()).getFillColor();
+            color = categories.get(attrs.getCategory()).getFillColor();
             if (node.containingPackage() != pkg && color.matches("^[!@#$%^&*+=][0-9A-Fa-f]{6}$")) {
                 //grey out the fill color
                 final StringBuffer sb = new StringBuffer("#");
@@ -867,10 +1176,12 @@ public class ClassDocGraph {
         return Integer.toHexString(colorValue);
     }
 
-    private String getLineColor(PackageDoc pkg, ClassDoc cls, ClassDoc node) {
+    private String getLineColor(PackageDoc pkg, ClassDoc cls, int nodeId) {
+        ClassDoc node = nodeDocs[nodeId];
+        NodeAttributes attrs = nodeAttributes[nodeId];
         String color = "#000000";
-        if (cls != node && node.tags(TAG_LANDMARK).length <= 0 && node.tags(TAG_CATEGORY).length > 0 && categories.containsKey(node.tags(TAG_CATEGORY)[0].text())) {
-            color = categories.get(node.tags(TAG_CATEGORY)[0].text()).getLineColor();
+        if (cls != node && !attrs.isLandmark() && attrs.getCategory() != null && categories.containsKey(attrs.getCategory())) {
+            color = categories.get(attrs.getCategory()).getLineColor();
         }
 
         if (node.containingPackage() != pkg) {
@@ -890,22 +1201,23 @@ public class ClassDocGraph {
             return getLineColor(
                     pkg,
                     (ClassDoc) edge.getSource(),
-                    (ClassDoc) edge.getTarget());
+                    nodeIds.get(edge.getTarget()));
         } else {
             //not a class (a package or something)
             String color = "#000000";
-            if (pkg != null &&
-                    pkg.tags(TAG_CATEGORY).length > 0 &&
-                    categories.containsKey(pkg.tags(TAG_CATEGORY)[0].text())) {
-                color = categories.get(pkg.tags(TAG_CATEGORY)[0].text()).getLineColor();
+            if (pkg != null) {
+                String category = getAttributes(pkg).getCategory();
+                if (category != null && categories.containsKey(category)) {
+                    color = categories.get(category).getLineColor();
+                }
             }
             return color;
         }
     }
 
-    private static String getFontColor(PackageDoc pkg, ClassDoc doc) {
+    private static String getFontColor(PackageDoc pkg, PackageDoc nodePackage) {
         String color = "black";
-        if (!(doc.containingPackage() == pkg)) {
+        if (!(nodePackage == pkg)) {
             color = "gray30";
         }
         return color;
@@ -913,7 +1225,7 @@ public class ClassDocGraph {
 
     private static String getFontColor(PackageDoc pkg, Edge edge) {
         if (edge.getTarget() instanceof ClassDoc) {
-            return getFontColor(pkg, (ClassDoc) edge.getTarget());
+            return getFontColor(pkg, ((ClassDoc) edge.getTarget()).containingPackage());
         } else {
             return "black";
         }
@@ -929,9 +1241,8 @@ public class ClassDocGraph {
         return name.replace('.', '_');
     }
 
-    private static String getNodeLabel(PackageDoc pkg, ClassDoc node) {
+    private static String getNodeLabel(ClassDoc node, String stereotype, boolean foreign) {
         StringBuilder buf = new StringBuilder(256);
-        String stereotype = getStereotype(node);
         if (stereotype != null) {
             //TODO - we should have an option to use "<<" and ">>" for systems
             // where the encoding is messed up
@@ -940,32 +1251,91 @@ public class ClassDocGraph {
             buf.append("&#187;\\n");
         }
 
-        if (node.containingPackage() == pkg) {
+        if (!foreign) {
             //we are in the same package
             buf.append(node.name());
         } else {
             //in a different package
-            if (node.containingPackage() == null) {
+            PackageDoc pkg = node.containingPackage();
+            if (pkg == null) {
                 //if the class does not have a package
                 buf.append(node.name());
             } else {
                 //it does, so append the package name
                 buf.append(node.name());
                 buf.append("\\n(");
-                buf.append(node.containingPackage().name());
+                buf.append(pkg.name());
                 buf.append(')');
             }
         }
         return buf.toString();
     }
 
-    private static String escape(String text) {
-        // Escape some characters to prevent syntax errors.
-        if (text != null) {
-            text = text.replaceAll("" +
-            		"(\"|'|\\\\.?|\\s)+", " ");
+    /**
+     * Escapes some characters to prevent syntax errors.  Replaces every run
+     * of quotes, whitespace and backslash escapes with a single space, the
+     * same as {@code text.replaceAll("(\"|'|\\\\.?|\\s)+", " ")} but
+     * without allocating anything when there is nothing to replace.
+     */
+    static String escape(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length && escapeLength(text, i) == 0) {
+            i ++;
+        }
+        if (i == length) {
+            return text;
+        }
+
+        StringBuilder buf = new StringBuilder(length);
+        buf.append(text, 0, i);
+        while (i < length) {
+            int n = escapeLength(text, i);
+            if (n == 0) {
+                buf.append(text.charAt(i ++));
+                continue;
+            }
+
+            do {
+                i += n;
+            } while (i < length && (n = escapeLength(text, i)) != 0);
+            buf.append(' ');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns the number of characters of the quote, whitespace or backslash
+     * escape at the specified index, or 0 if there is none.
+     */
+    private static int escapeLength(String text, int index) {
+        char c = text.charAt(index);
+        switch (c) {
+        case '"': case '\'':
+        case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+            return 1;
+        case '\\':
+            // A backslash takes the next character unless it ends the line.
+            if (index + 1 == text.length()) {
+                return 1;
+            }
+            char next = text.charAt(index + 1);
+            if (next == '\n' || next == '\r' || next == '\u0085' ||
+                next == '\u2028' || next == '\u2029') {
+                return 1;
+            }
+            if (Character.isHighSurrogate(next) && index + 2 < text.length() &&
+                Character.isLowSurrogate(text.charAt(index + 2))) {
+                return 3;
+            }
+            return 2;
+        default:
+            return 0;
         }
-        return text;
     }
 
     private static String getPath(PackageDoc pkg, ClassDoc node) {
@@ -1027,4 +1397,98 @@ public class ClassDocGraph {
         }
 
     }
+
+    /**
+     * The nodes and edges fetched for a diagram.  Like a {@link TreeMap} of
+     * the nodes keyed by name and a {@link TreeSet} of the edges, a node
+     * replaces an earlier one with the same name while an edge does not.
+     */
+    private static final class Subgraph {
+        private final IntList nodes = new IntList();
+        private final IntList edges = new IntList();
+
+        void addNode(int nameRank, int node) {
+            nodes.add(nameRank, node);
+        }
+
+        void addEdge(int edgeRank, int edge) {
+            edges.add(edgeRank, edge);
+        }
+
+        /**
+         * Returns the node ids in the name order.
+         */
+        int[] getNodes() {
+            return nodes.toSortedArray(false);
+        }
+
+        /**
+         * Returns the edge ids in the {@link Edge#compareTo(Edge)} order.
+         */
+        int[] getEdges() {
+            return edges.toSortedArray(true);
+        }
+    }
+
+    private static final class IntList {
+        private int[] keys = new int[16];
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            add(0, value);
+        }
+
+        /**
+         * Adds a value under a sort key.  The insertion order is kept as
+         * well, so that the duplicate keys can be resolved.
+         */
+        void add(int key, int value) {
+            if (size == values.length) {
+                int[] newKeys = new int[size << 1];
+                int[] newValues = new int[size << 1];
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                keys = newKeys;
+                values = newValues;
+            }
+            keys[size] = key;
+            values[size] = value;
+            size ++;
+        }
+
+        int[] toArray() {
+            int[] array = new int[size];
+            System.arraycopy(values, 0, array, 0, size);
+            return array;
+        }
+
+        /**
+         * Returns one value per key in the key order, taking the first or
+         * the last value added under each key.
+         */
+        int[] toSortedArray(boolean first) {
+            // Keys are never negative, so this sorts by key, then by index.
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i ++) {
+                sorted[i] = (long) keys[i] << 32 | i;
+            }
+            Arrays.sort(sorted);
+
+            int[] array = new int[size];
+            int length = 0;
+            for (int i = 0; i < size; i ++) {
+                int key = (int) (sorted[i] >>> 32);
+                boolean firstOfKey = i == 0 || (int) (sorted[i - 1] >>> 32) != key;
+                boolean lastOfKey = i == size - 1 || (int) (sorted[i + 1] >>> 32) != key;
+                if (first? firstOfKey : lastOfKey) {
+                    array[length ++] = values[(int) sorted[i]];
+                }
+            }
+
+            int[] result = new int[length];
+            System.arraycopy(array, 0, result, 0, length);
+            return result;
+        }
+    }
 }
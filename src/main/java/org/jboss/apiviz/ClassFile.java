@@ -0,0 +1,341 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a class file APIviz needs to draw a class: its name, access
+ * flags, super types and methods, and where it is nested.  Class names are
+ * in the internal form, e.g. {@code java/util/Map$Entry}.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class ClassFile {
+
+    static final int ACC_PUBLIC     = 0x0001;
+    static final int ACC_PRIVATE    = 0x0002;
+    static final int ACC_PROTECTED  = 0x0004;
+    static final int ACC_STATIC     = 0x0008;
+    static final int ACC_BRIDGE     = 0x0040;
+    static final int ACC_INTERFACE  = 0x0200;
+    static final int ACC_ABSTRACT   = 0x0400;
+    static final int ACC_SYNTHETIC  = 0x1000;
+    static final int ACC_ANNOTATION = 0x2000;
+    static final int ACC_ENUM       = 0x4000;
+
+    static final int MAGIC = 0xCAFEBABE;
+
+    static final int CONSTANT_UTF8 = 1;
+    static final int CONSTANT_INTEGER = 3;
+    static final int CONSTANT_FLOAT = 4;
+    static final int CONSTANT_LONG = 5;
+    static final int CONSTANT_DOUBLE = 6;
+    static final int CONSTANT_CLASS = 7;
+    static final int CONSTANT_STRING = 8;
+    static final int CONSTANT_FIELDREF = 9;
+    static final int CONSTANT_METHODREF = 10;
+    static final int CONSTANT_INTERFACE_METHODREF = 11;
+    static final int CONSTANT_NAME_AND_TYPE = 12;
+    static final int CONSTANT_METHOD_HANDLE = 15;
+    static final int CONSTANT_METHOD_TYPE = 16;
+    static final int CONSTANT_DYNAMIC = 17;
+    static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    static final int CONSTANT_MODULE = 19;
+    static final int CONSTANT_PACKAGE = 20;
+
+    private final String name;
+    private final int accessFlags;
+    private final String superName;
+    private final String[] interfaceNames;
+    private final List<Method> methods = new ArrayList<Method>();
+    private String outerName;
+    private String simpleName;
+    private boolean anonymous;
+    private int innerFlags = -1;
+
+    /**
+     * Parses the class file in the remaining bytes of the specified buffer.
+     *
+     * @throws IllegalArgumentException if the bytes are not a class file
+     */
+    ClassFile(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("not a class file");
+            }
+            in.getInt(); // minor and major version
+
+            // Remember where each constant is, and decode only what is used.
+            int constantCount = in.getShort() & 0xFFFF;
+            int[] offsets = new int[constantCount];
+            byte[] tags = new byte[constantCount];
+            for (int i = 1; i < constantCount; i ++) {
+                byte tag = in.get();
+                tags[i] = tag;
+                offsets[i] = in.position();
+                in.position(in.position() + getConstantLength(in, tag));
+                if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                    i ++;
+                }
+            }
+            ConstantPool pool = new ConstantPool(in, offsets, tags);
+
+            accessFlags = in.getShort() & 0xFFFF;
+            name = pool.getClassName(in.getShort() & 0xFFFF);
+            superName = pool.getClassName(in.getShort() & 0xFFFF);
+            interfaceNames = new String[in.getShort() & 0xFFFF];
+            for (int i = 0; i < interfaceNames.length; i ++) {
+                interfaceNames[i] = pool.getClassName(in.getShort() & 0xFFFF);
+            }
+
+            // Fields
+            for (int i = in.getShort() & 0xFFFF; i > 0; i --) {
+                in.position(in.position() + 6);
+                skipAttributes(in);
+            }
+
+            // Methods
+            for (int i = in.getShort() & 0xFFFF; i > 0; i --) {
+                int flags = in.getShort() & 0xFFFF;
+                String methodName = pool.getUtf8(in.getShort() & 0xFFFF);
+                in.getShort(); // descriptor
+                skipAttributes(in);
+                methods.add(new Method(methodName, flags));
+            }
+
+            // Class attributes
+            for (int i = in.getShort() & 0xFFFF; i > 0; i --) {
+                String attributeName = pool.getUtf8(in.getShort() & 0xFFFF);
+                int length = in.getInt();
+                int end = in.position() + length;
+                if ("InnerClasses".equals(attributeName)) {
+                    readInnerClasses(in, pool);
+                }
+                in.position(end);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated class file");
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("malformed class file");
+        }
+    }
+
+    /**
+     * Returns the length of the constant at the current position of the
+     * specified buffer, not counting its tag.
+     */
+    static int getConstantLength(ByteBuffer in, byte tag) {
+        switch (tag) {
+        case CONSTANT_UTF8:
+            return 2 + (in.getShort(in.position()) & 0xFFFF);
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+            return 2;
+        case CONSTANT_METHOD_HANDLE:
+            return 3;
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+            return 4;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+            return 8;
+        default:
+            throw new IllegalArgumentException("unknown constant: " + tag);
+        }
+    }
+
+    private static void skipAttributes(ByteBuffer in) {
+        for (int i = in.getShort() & 0xFFFF; i > 0; i --) {
+            in.getShort();
+            int length = in.getInt();
+            in.position(in.position() + length);
+        }
+    }
+
+    private void readInnerClasses(ByteBuffer in, ConstantPool pool) {
+        for (int i = in.getShort() & 0xFFFF; i > 0; i --) {
+            int innerIndex = in.getShort() & 0xFFFF;
+            int outerIndex = in.getShort() & 0xFFFF;
+            int nameIndex = in.getShort() & 0xFFFF;
+            int flags = in.getShort() & 0xFFFF;
+            if (!name.equals(pool.getClassName(innerIndex))) {
+                continue;
+            }
+
+            // A member class has both; a local or anonymous one does not.
+            if (outerIndex == 0 || nameIndex == 0) {
+                anonymous = true;
+            } else {
+                outerName = pool.getClassName(outerIndex);
+                simpleName = pool.getUtf8(nameIndex);
+            }
+            // The flags of a member class are stored here, not in the
+            // class itself (e.g. protected and static).
+            innerFlags = flags;
+        }
+    }
+
+    /**
+     * Returns the internal name, e.g. {@code java/util/Map$Entry}.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the access flags, including those only a member class has.
+     */
+    int getAccessFlags() {
+        return innerFlags >= 0? innerFlags : accessFlags;
+    }
+
+    /**
+     * Returns the internal name of the super class, or {@code null} for
+     * {@code java.lang.Object}.
+     */
+    String getSuperName() {
+        return superName;
+    }
+
+    String[] getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    List<Method> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns the internal name of the class this class is a member of, or
+     * {@code null} if it is a top-level class.
+     */
+    String getOuterName() {
+        return outerName;
+    }
+
+    /**
+     * Returns the name of this class within its outer class, or {@code null}
+     * if it is a top-level class.
+     */
+    String getSimpleName() {
+        return simpleName;
+    }
+
+    /**
+     * Returns {@code true} if and only if this is a local or an anonymous
+     * class.
+     */
+    boolean isAnonymous() {
+        return anonymous;
+    }
+
+    static final class Method {
+        private final String name;
+        private final int accessFlags;
+
+        Method(String name, int accessFlags) {
+            this.name = name;
+            this.accessFlags = accessFlags;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getAccessFlags() {
+            return accessFlags;
+        }
+
+        boolean isConstructor() {
+            return name.equals("<init>") || name.equals("<clinit>");
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteBuffer in;
+        private final int[] offsets;
+        private final byte[] tags;
+
+        ConstantPool(ByteBuffer in, int[] offsets, byte[] tags) {
+            this.in = in;
+            this.offsets = offsets;
+            this.tags = tags;
+        }
+
+        String getClassName(int index) {
+            if (index == 0) {
+                return null;
+            }
+            if (tags[index] != CONSTANT_CLASS) {
+                throw new IllegalArgumentException("not a class: " + index);
+            }
+            return getUtf8(in.getShort(offsets[index]) & 0xFFFF);
+        }
+
+        String getUtf8(int index) {
+            if (tags[index] != CONSTANT_UTF8) {
+                throw new IllegalArgumentException("not a string: " + index);
+            }
+            return decodeUtf8(in, offsets[index]);
+        }
+    }
+
+    /**
+     * Decodes the modified UTF-8 string at the specified position, which
+     * starts with its length in two bytes.
+     */
+    static String decodeUtf8(ByteBuffer in, int offset) {
+        int length = in.getShort(offset) & 0xFFFF;
+        int i = offset + 2;
+        int end = i + length;
+        char[] chars = new char[length];
+        int count = 0;
+        while (i < end) {
+            int b = in.get(i ++) & 0xFF;
+            if (b < 0x80) {
+                chars[count ++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[count ++] = (char) ((b & 0x1F) << 6 | in.get(i ++) & 0x3F);
+            } else {
+                chars[count ++] = (char) ((b & 0x0F) << 12 | (in.get(i ++) & 0x3F) << 6 | in.get(i ++) & 0x3F);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.PackageDoc;
+import com.sun.javadoc.RootDoc;
+
+/**
+ * A {@link RootDoc} read from compiled classes rather than from the source
+ * code, so that the diagrams can be generated without running javadoc.
+ * The classes, packages and methods are proxies answering what
+ * {@link ClassDocGraph} asks about them; there are no doc comments, so
+ * there are no tags either.  The classes outside the specified class path
+ * are looked up with reflection.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class ClassFileRootDoc {
+
+    /** Documents the public classes and members only. */
+    static final int PUBLIC = 3;
+    /** Documents the public and protected classes and members (default). */
+    static final int PROTECTED = 2;
+    /** Documents all classes and members except the private ones. */
+    static final int PACKAGE = 1;
+    /** Documents all classes and members. */
+    static final int PRIVATE = 0;
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * Reads the classes in the specified directories and jar files, and
+     * returns the {@link RootDoc} with the classes of the specified access
+     * level or higher.
+     */
+    static RootDoc load(File[] classPath, String[][] options, int access) throws IOException {
+        return new ClassFileRootDoc(classPath, options, access).root;
+    }
+
+    private final String[][] options;
+    private final int access;
+    private final RootDoc root;
+
+    /**
+     * Key = internal class name<br>
+     * Value = class file (the first one in the class path)
+     */
+    private final Map<String, ClassFile> classFiles = new HashMap<String, ClassFile>();
+
+    /**
+     * Key = internal class name<br>
+     * Value = the proxy, which has to be unique because the graph compares
+     *         the nodes by identity
+     */
+    private final Map<String, ClassDoc> classes = new HashMap<String, ClassDoc>();
+    private final Map<String, PackageDoc> packages = new HashMap<String, PackageDoc>();
+
+    /**
+     * Key = qualified class name<br>
+     * Value = included class
+     */
+    private final Map<String, ClassDoc> includedClasses = new TreeMap<String, ClassDoc>();
+    private final Map<String, PackageDoc> includedPackages = new TreeMap<String, PackageDoc>();
+
+    private ClassFileRootDoc(File[] classPath, String[][] options, int access) throws IOException {
+        this.options = options;
+        this.access = access;
+        root = (RootDoc) Proxy.newProxyInstance(
+                RootDoc.class.getClassLoader(), new Class<?>[] { RootDoc.class }, new RootHandler());
+
+        for (File f: classPath) {
+            if (f.isDirectory()) {
+                loadDirectory(f);
+            } else {
+                loadArchive(f);
+            }
+        }
+
+        for (String name: classFiles.keySet()) {
+            ClassHandler c = getHandler(getClassDoc(name));
+            if (c.included) {
+                includedClasses.put(c.qualifiedName, getClassDoc(name));
+                includedPackages.put(c.packageName, getPackageDoc(c.packageName));
+            }
+        }
+    }
+
+    private void loadDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f: files) {
+            if (f.isDirectory()) {
+                loadDirectory(f);
+            } else if (f.getName().endsWith(CLASS_SUFFIX)) {
+                load(f.getPath(), FileUtil.readBytes(f));
+            }
+        }
+    }
+
+    private void loadArchive(File file) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                // Skip the versioned classes of a multi-release jar.
+                if (entry.isDirectory() || !entry.getName().endsWith(CLASS_SUFFIX) ||
+                    entry.getName().startsWith("META-INF/")) {
+                    continue;
+                }
+
+                load(file + "!/" + entry.getName(), FileUtil.readEntry(zip, entry));
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void load(String path, byte[] content) {
+        ClassFile cf;
+        try {
+            cf = new ClassFile(ByteBuffer.wrap(content));
+        } catch (IllegalArgumentException e) {
+            root.printWarning("Skipping " + path + ": " + e.getMessage());
+            return;
+        }
+
+        // The first one in the class path wins.
+        if (!classFiles.containsKey(cf.getName())) {
+            classFiles.put(cf.getName(), cf);
+        }
+    }
+
+    private synchronized ClassDoc getClassDoc(String internalName) {
+        ClassDoc c = classes.get(internalName);
+        if (c == null) {
+            c = (ClassDoc) Proxy.newProxyInstance(
+                    ClassDoc.class.getClassLoader(), new Class<?>[] { ClassDoc.class },
+                    new ClassHandler(internalName));
+            classes.put(internalName, c);
+        }
+        return c;
+    }
+
+    private ClassDoc[] getClassDocs(String[] internalNames) {
+        ClassDoc[] answer = new ClassDoc[internalNames.length];
+        for (int i = 0; i < answer.length; i ++) {
+            answer[i] = getClassDoc(internalNames[i]);
+        }
+        return answer;
+    }
+
+    private static ClassHandler getHandler(ClassDoc c) {
+        return (ClassHandler) Proxy.getInvocationHandler(c);
+    }
+
+    private synchronized PackageDoc getPackageDoc(String name) {
+        PackageDoc p = packages.get(name);
+        if (p == null) {
+            p = (PackageDoc) Proxy.newProxyInstance(
+                    PackageDoc.class.getClassLoader(), new Class<?>[] { PackageDoc.class },
+                    new PackageHandler(name));
+            packages.put(name, p);
+        }
+        return p;
+    }
+
+    private static int getAccessLevel(int flags) {
+        if ((flags & ClassFile.ACC_PUBLIC) != 0) {
+            return PUBLIC;
+        }
+        if ((flags & ClassFile.ACC_PROTECTED) != 0) {
+            return PROTECTED;
+        }
+        if ((flags & ClassFile.ACC_PRIVATE) != 0) {
+            return PRIVATE;
+        }
+        return PACKAGE;
+    }
+
+    /**
+     * Answers {@link Object} methods by identity, and the methods nobody
+     * asked for with {@code false}, {@code 0}, an empty array or
+     * {@code null}.
+     */
+    private abstract static class DocHandler implements InvocationHandler {
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (methodName.equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            }
+            if (methodName.equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            }
+            if (methodName.equals("toString") && args == null) {
+                return name();
+            }
+            if (methodName.equals("compareTo") && args != null && args.length == 1) {
+                return name().compareTo(args[0].toString());
+            }
+            if (methodName.equals("commentText") || methodName.equals("getRawCommentText")) {
+                return "";
+            }
+
+            Object answer = invoke(proxy, methodName, args);
+            if (answer != null) {
+                return answer;
+            }
+
+            Class<?> type = method.getReturnType();
+            if (type == Boolean.TYPE) {
+                return Boolean.FALSE;
+            }
+            if (type == Integer.TYPE) {
+                return 0;
+            }
+            if (type.isArray()) {
+                return Array.newInstance(type.getComponentType(), 0);
+            }
+            return null;
+        }
+
+        /**
+         * Returns the name {@link Object#toString()} returns.
+         */
+        abstract String name();
+
+        /**
+         * Answers the specified method, or returns {@code null} to give
+         * the default answer.
+         */
+        abstract Object invoke(Object proxy, String methodName, Object[] args);
+    }
+
+    private final class RootHandler extends DocHandler {
+
+        @Override
+        String name() {
+            return "";
+        }
+
+        @Override
+        Object invoke(Object proxy, String methodName, Object[] args) {
+            if (methodName.equals("classes") || methodName.equals("specifiedClasses")) {
+                return includedClasses.values().toArray(new ClassDoc[includedClasses.size()]);
+            }
+            if (methodName.equals("specifiedPackages")) {
+                return includedPackages.values().toArray(new PackageDoc[includedPackages.size()]);
+            }
+            if (methodName.equals("classNamed")) {
+                return includedClasses.get(args[0]);
+            }
+            if (methodName.equals("packageNamed")) {
+                return includedPackages.get(args[0]);
+            }
+            if (methodName.equals("options")) {
+                return options.clone();
+            }
+            if (methodName.equals("printNotice")) {
+                System.out.println(args[args.length - 1]);
+                return Boolean.TRUE;
+            }
+            if (methodName.equals("printWarning")) {
+                System.err.println("warning - " + args[args.length - 1]);
+                return Boolean.TRUE;
+            }
+            if (methodName.equals("printError")) {
+                System.err.println("error - " + args[args.length - 1]);
+                return Boolean.TRUE;
+            }
+            return null;
+        }
+    }
+
+    private final class PackageHandler extends DocHandler {
+
+        private final String name;
+
+        PackageHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        String name() {
+            return name;
+        }
+
+        @Override
+        Object invoke(Object proxy, String methodName, Object[] args) {
+            if (methodName.equals("name")) {
+                return name;
+            }
+            if (methodName.equals("isIncluded")) {
+                return includedPackages.containsKey(name);
+            }
+            if (methodName.equals("allClasses")) {
+                List<ClassDoc> answer = new ArrayList<ClassDoc>();
+                for (ClassDoc c: includedClasses.values()) {
+                    if (c.containingPackage() == proxy) {
+                        answer.add(c);
+                    }
+                }
+                return answer.toArray(new ClassDoc[answer.size()]);
+            }
+            return null;
+        }
+    }
+
+    private final class ClassHandler extends DocHandler {
+
+        private final String internalName;
+        private final String packageName;
+        private final String name;
+        private final String qualifiedName;
+        private final int flags;
+        private final String outerName;
+        private final String superName;
+        private final String[] interfaceNames;
+        private final List<ClassFile.Method> methods;
+        private final boolean included;
+
+        ClassHandler(String internalName) {
+            this.internalName = internalName;
+            int slash = internalName.lastIndexOf('/');
+            packageName = slash < 0? "" : internalName.substring(0, slash).replace('/', '.');
+            String localName = internalName.substring(slash + 1);
+
+            ClassFile cf = classFiles.get(internalName);
+            if (cf != null) {
+                flags = cf.getAccessFlags();
+                outerName = cf.getOuterName();
+                superName = cf.getSuperName();
+                interfaceNames = cf.getInterfaceNames();
+                methods = cf.getMethods();
+                if (outerName != null) {
+                    name = getHandler(getClassDoc(outerName)).name + '.' + cf.getSimpleName();
+                } else {
+                    name = localName;
+                }
+
+                included =
+                    !cf.isAnonymous() &&
+                    (flags & ClassFile.ACC_SYNTHETIC) == 0 &&
+                    getAccessLevel(flags) >= access &&
+                    !localName.equals("package-info") &&
+                    !localName.equals("module-info") &&
+                    (outerName == null || getHandler(getClassDoc(outerName)).included);
+            } else {
+                // Not in the class path; ask the JVM.
+                Class<?> c = null;
+                try {
+                    c = Class.forName(
+                            internalName.replace('/', '.'), false,
+                            ClassFileRootDoc.class.getClassLoader());
+                } catch (Throwable t) {
+                    // Unknown class
+                }
+
+                if (c != null) {
+                    int f = c.getModifiers();
+                    if (c.isAnnotation()) {
+                        f |= ClassFile.ACC_ANNOTATION;
+                    }
+                    if (c.isEnum()) {
+                        f |= ClassFile.ACC_ENUM;
+                    }
+                    flags = f;
+                    Class<?> outer = c.getDeclaringClass();
+                    outerName = outer == null? null : getInternalName(outer);
+                    superName = c.getSuperclass() == null? null : getInternalName(c.getSuperclass());
+                    Class<?>[] interfaces = c.getInterfaces();
+                    interfaceNames = new String[interfaces.length];
+                    for (int i = 0; i < interfaces.length; i ++) {
+                        interfaceNames[i] = getInternalName(interfaces[i]);
+                    }
+                    methods = new ArrayList<ClassFile.Method>();
+                    for (Method m: getDeclaredMethods(c)) {
+                        int mf = m.getModifiers();
+                        if (m.isSynthetic()) {
+                            mf |= ClassFile.ACC_SYNTHETIC;
+                        }
+                        if (m.isBridge()) {
+                            mf |= ClassFile.ACC_BRIDGE;
+                        }
+                        methods.add(new ClassFile.Method(m.getName(), mf));
+                    }
+                    if (outerName != null) {
+                        name = getHandler(getClassDoc(outerName)).name + '.' + c.getSimpleName();
+                    } else {
+                        name = localName;
+                    }
+                } else {
+                    flags = ClassFile.ACC_PUBLIC;
+                    outerName = null;
+                    superName = null;
+                    interfaceNames = new String[0];
+                    methods = new ArrayList<ClassFile.Method>();
+                    name = localName.replace('$', '.');
+                }
+                included = false;
+            }
+
+            qualifiedName = packageName.length() == 0? name : packageName + '.' + name;
+        }
+
+        @Override
+        String name() {
+            return qualifiedName;
+        }
+
+        @Override
+        Object invoke(Object proxy, String methodName, Object[] args) {
+            if (methodName.equals("name") || methodName.equals("typeName")) {
+                return name;
+            }
+            if (methodName.equals("qualifiedName") || methodName.equals("qualifiedTypeName")) {
+                return qualifiedName;
+            }
+            if (methodName.equals("simpleTypeName")) {
+                return name.substring(name.lastIndexOf('.') + 1);
+            }
+            if (methodName.equals("dimension")) {
+                return "";
+            }
+            if (methodName.equals("asClassDoc")) {
+                return proxy;
+            }
+            if (methodName.equals("containingPackage")) {
+                return getPackageDoc(packageName);
+            }
+            if (methodName.equals("containingClass")) {
+                return outerName == null? null : getClassDoc(outerName);
+            }
+            if (methodName.equals("isIncluded")) {
+                return included;
+            }
+            if (methodName.equals("superclass")) {
+                if (isInterface() || superName == null) {
+                    return null;
+                }
+                return getClassDoc(superName);
+            }
+            if (methodName.equals("interfaces")) {
+                return getClassDocs(interfaceNames);
+            }
+            if (methodName.equals("methods")) {
+                return getMethods();
+            }
+            if (methodName.equals("isInterface")) {
+                return isInterface();
+            }
+            if (methodName.equals("isAnnotationType")) {
+                return isAnnotationType();
+            }
+            if (methodName.equals("isEnum")) {
+                return (flags & ClassFile.ACC_ENUM) != 0;
+            }
+            if (methodName.equals("isAbstract")) {
+                return (flags & ClassFile.ACC_ABSTRACT) != 0;
+            }
+            if (methodName.equals("isStatic")) {
+                return (flags & ClassFile.ACC_STATIC) != 0;
+            }
+            if (methodName.equals("isFinal")) {
+                return (flags & Modifier.FINAL) != 0;
+            }
+            if (methodName.equals("isPublic")) {
+                return getAccessLevel(flags) == PUBLIC;
+            }
+            if (methodName.equals("isProtected")) {
+                return getAccessLevel(flags) == PROTECTED;
+            }
+            if (methodName.equals("isPackagePrivate")) {
+                return getAccessLevel(flags) == PACKAGE;
+            }
+            if (methodName.equals("isPrivate")) {
+                return getAccessLevel(flags) == PRIVATE;
+            }
+            if (methodName.equals("isException")) {
+                return isSubclassOf("java/lang/Exception");
+            }
+            if (methodName.equals("isError")) {
+                return isSubclassOf("java/lang/Error");
+            }
+            if (methodName.equals("isClass")) {
+                return (flags & ClassFile.ACC_INTERFACE) == 0;
+            }
+            if (methodName.equals("isOrdinaryClass")) {
+                return (flags & (ClassFile.ACC_INTERFACE | ClassFile.ACC_ENUM)) == 0 &&
+                       !isSubclassOf("java/lang/Exception") &&
+                       !isSubclassOf("java/lang/Error");
+            }
+            return null;
+        }
+
+        private boolean isInterface() {
+            return (flags & ClassFile.ACC_INTERFACE) != 0 && !isAnnotationType();
+        }
+
+        private boolean isAnnotationType() {
+            return (flags & ClassFile.ACC_ANNOTATION) != 0;
+        }
+
+        private boolean isSubclassOf(String internalName) {
+            ClassHandler c = this;
+            // Bail out on a circular hierarchy.
+            for (int i = 0; i < 64; i ++) {
+                if (c.internalName.equals(internalName)) {
+                    return true;
+                }
+                if (c.superName == null) {
+                    return false;
+                }
+                c = getHandler(getClassDoc(c.superName));
+            }
+            return false;
+        }
+
+        private MethodDoc[] getMethods() {
+            List<MethodDoc> answer = new ArrayList<MethodDoc>();
+            for (final ClassFile.Method m: methods) {
+                int f = m.getAccessFlags();
+                if (m.isConstructor() ||
+                    (f & (ClassFile.ACC_SYNTHETIC | ClassFile.ACC_BRIDGE)) != 0 ||
+                    getAccessLevel(f) < access) {
+                    continue;
+                }
+
+                answer.add((MethodDoc) Proxy.newProxyInstance(
+                        MethodDoc.class.getClassLoader(), new Class<?>[] { MethodDoc.class },
+                        new MethodHandler(qualifiedName, m)));
+            }
+            return answer.toArray(new MethodDoc[answer.size()]);
+        }
+    }
+
+    private static final class MethodHandler extends DocHandler {
+
+        private final String className;
+        private final ClassFile.Method method;
+
+        MethodHandler(String className, ClassFile.Method method) {
+            this.className = className;
+            this.method = method;
+        }
+
+        @Override
+        String name() {
+            return className + '.' + method.getName();
+        }
+
+        @Override
+        Object invoke(Object proxy, String methodName, Object[] args) {
+            if (methodName.equals("name")) {
+                return method.getName();
+            }
+            if (methodName.equals("qualifiedName")) {
+                return name();
+            }
+            if (methodName.equals("isStatic")) {
+                return (method.getAccessFlags() & ClassFile.ACC_STATIC) != 0;
+            }
+            if (methodName.equals("isMethod")) {
+                return Boolean.TRUE;
+            }
+            return null;
+        }
+    }
+
+    private static String getInternalName(Class<?> c) {
+        return c.getName().replace('.', '/');
+    }
+
+    private static Method[] getDeclaredMethods(Class<?> c) {
+        try {
+            return c.getDeclaredMethods();
+        } catch (Throwable t) {
+            // Missing dependencies
+            return new Method[0];
+        }
+    }
+}
@@ -68,7 +68,18 @@ public class Constant {
 
     public static final String OPTION_NO_PACKAGE_DIAGRAM  = "-nopackagediagram";
     public static final String OPTION_SOURCE_CLASS_PATH   = "-sourceclasspath";
+    public static final String OPTION_SOURCE_DEPENDENCIES = "-sourcedependencies";
     public static final String OPTION_CATEGORY = "-category";
+    public static final String OPTION_RENDER_THREADS      = "-renderthreads";
+    public static final String OPTION_RENDER_BATCH_SIZE   = "-renderbatchsize";
+    public static final String OPTION_RENDER_CACHE        = "-rendercache";
+    public static final String OPTION_RENDER_CACHE_SIZE   = "-rendercachesize";
+    public static final String OPTION_RENDER_MEMORY       = "-rendermemory";
+    public static final String OPTION_RENDER_TIMEOUT      = "-rendertimeout";
+    public static final String OPTION_INJECT_THREADS      = "-injectthreads";
+    public static final String OPTION_IMAGE_FORMAT        = "-imageformat";
+    public static final String OPTION_NO_INCREMENTAL      = "-noincremental";
+    public static final String OPTION_RESUME              = "-resume";
     public static final String OPTION_HELP ="-help";
 
     private Constant() {
@@ -0,0 +1,441 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how long Graphviz takes to lay out a diagram from its
+ * {@link Size}: a fixed cost per process, plus a cost per node, per edge,
+ * and per node times the width of the widest rank, which is what the
+ * crossing minimization of {@code dot} grows with.  The time every
+ * Graphviz process actually took is recorded in the output directory, and
+ * the next run fits the weights of the estimate to the recorded times.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class CostModel {
+
+    static final String FILENAME = ".apiviz-costs";
+
+    private static final int MAGIC = 0x41504331; // "APC1"
+
+    /**
+     * The number of most recent samples which are kept.
+     */
+    private static final int MAX_SAMPLES = 1024;
+
+    /**
+     * The weights used until there are samples to fit: milliseconds per
+     * process, per node, per edge and per node times the rank width.
+     */
+    private static final double[] DEFAULT_WEIGHTS = { 30, 1, 0.5, 0.05 };
+
+    /**
+     * How many samples the default weights count as when fitting, so that
+     * a few samples do not throw the estimate off.
+     */
+    private static final double DEFAULT_WEIGHT_SAMPLES = 4;
+
+    private final File file;
+    private final List<Sample> samples = new ArrayList<Sample>();
+    private final double[] weights;
+
+    CostModel(File outputDirectory) {
+        file = new File(outputDirectory, FILENAME);
+
+        try {
+            load();
+        } catch (IOException e) {
+            // Missing or corrupt; start over.
+            samples.clear();
+        }
+        weights = fit(samples);
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            for (int i = in.readInt(); i > 0; i --) {
+                Size size = new Size(in.readInt(), in.readInt(), in.readLong());
+                samples.add(new Sample(size, in.readLong()));
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated time in milliseconds a single Graphviz process
+     * takes to lay out diagrams of the specified total size.
+     */
+    double estimate(Size size) {
+        double[] x = size.getFeatures();
+        double millis = 0;
+        for (int i = 0; i < x.length; i ++) {
+            millis += weights[i] * x[i];
+        }
+        return millis;
+    }
+
+    /**
+     * Records the time a Graphviz process took to lay out diagrams of the
+     * specified total size.
+     */
+    synchronized void record(Size size, long nanos) {
+        samples.add(new Sample(size, nanos));
+    }
+
+    /**
+     * Writes the most recent samples, which the next run fits the estimate
+     * to.
+     */
+    synchronized void save() throws IOException {
+        List<Sample> samplesToSave = samples.subList(
+                Math.max(0, samples.size() - MAX_SAMPLES), samples.size());
+
+        File tmpFile = File.createTempFile("apiviz-", ".tmp", file.getParentFile());
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(samplesToSave.size());
+                for (Sample s: samplesToSave) {
+                    out.writeInt(s.size.nodes);
+                    out.writeInt(s.size.edges);
+                    out.writeLong(s.size.crossings);
+                    out.writeLong(s.nanos);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tmpFile.renameTo(file) && !FileUtil.moveFile(tmpFile, file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Fits the weights to the samples with least squares, pulling them
+     * towards the default weights as if those had been measured
+     * {@link #DEFAULT_WEIGHT_SAMPLES} times.
+     */
+    static double[] fit(List<Sample> samples) {
+        int n = DEFAULT_WEIGHTS.length;
+        if (samples.isEmpty()) {
+            return DEFAULT_WEIGHTS.clone();
+        }
+
+        // The mean square of each feature, so that the pull towards the
+        // defaults does not depend on the scale of the feature.
+        double[] scale = new double[n];
+        for (Sample s: samples) {
+            double[] x = s.size.getFeatures();
+            for (int i = 0; i < n; i ++) {
+                scale[i] += x[i] * x[i];
+            }
+        }
+
+        // The normal equations, augmented with the right-hand side.
+        double[][] a = new double[n][n + 1];
+        for (Sample s: samples) {
+            double[] x = s.size.getFeatures();
+            double y = s.nanos / 1000000.0;
+            for (int i = 0; i < n; i ++) {
+                for (int j = 0; j < n; j ++) {
+                    a[i][j] += x[i] * x[j];
+                }
+                a[i][n] += x[i] * y;
+            }
+        }
+        for (int i = 0; i < n; i ++) {
+            double prior = DEFAULT_WEIGHT_SAMPLES * Math.max(scale[i] / samples.size(), 1);
+            a[i][i] += prior;
+            a[i][n] += prior * DEFAULT_WEIGHTS[i];
+        }
+
+        double[] w = solve(a);
+        for (int i = 0; i < n; i ++) {
+            // A negative weight would make a bigger diagram look cheaper.
+            if (!(w[i] >= 0)) {
+                w[i] = 0;
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Solves the specified augmented linear system with Gaussian
+     * elimination.
+     */
+    private static double[] solve(double[][] a) {
+        int n = a.length;
+        for (int col = 0; col < n; col ++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row ++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            double[] tmp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+
+            for (int row = col + 1; row < n; row ++) {
+                double f = a[row][col] / a[col][col];
+                for (int k = col; k <= n; k ++) {
+                    a[row][k] -= f * a[col][k];
+                }
+            }
+        }
+
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row --) {
+            double sum = a[row][n];
+            for (int k = row + 1; k < n; k ++) {
+                sum -= a[row][k] * x[k];
+            }
+            x[row] = sum / a[row][row];
+        }
+        return x;
+    }
+
+    /**
+     * Returns the size of the specified Graphviz source.
+     */
+    static Size measure(CharSequence source) {
+        Meter meter = new Meter();
+        meter.append(source);
+        return meter.getSize();
+    }
+
+    /**
+     * Returns the size of a diagram with the specified number of nodes and
+     * the specified edges, from tails[i] to heads[i], in the direction they
+     * are written in the source.  The ranks are approximated by the longest
+     * path from a node without incoming edges; the nodes on a cycle keep
+     * the rank they reached so far.
+     */
+    static Size measure(int nodes, int[] tails, int[] heads) {
+        int[] inDegrees = new int[nodes];
+        int[] outDegrees = new int[nodes];
+        for (int i = 0; i < tails.length; i ++) {
+            outDegrees[tails[i]] ++;
+            inDegrees[heads[i]] ++;
+        }
+        int[][] adjacentHeads = new int[nodes][];
+        for (int n = 0; n < nodes; n ++) {
+            adjacentHeads[n] = new int[outDegrees[n]];
+            outDegrees[n] = 0;
+        }
+        for (int i = 0; i < tails.length; i ++) {
+            adjacentHeads[tails[i]][outDegrees[tails[i]] ++] = heads[i];
+        }
+
+        int[] ranks = new int[nodes];
+        int[] queue = new int[nodes];
+        int queueEnd = 0;
+        for (int n = 0; n < nodes; n ++) {
+            if (inDegrees[n] == 0) {
+                queue[queueEnd ++] = n;
+            }
+        }
+        for (int queueStart = 0; queueStart < queueEnd; queueStart ++) {
+            int tail = queue[queueStart];
+            for (int head: adjacentHeads[tail]) {
+                ranks[head] = Math.max(ranks[head], ranks[tail] + 1);
+                if (-- inDegrees[head] == 0) {
+                    queue[queueEnd ++] = head;
+                }
+            }
+        }
+
+        int[] rankWidths = new int[nodes + 1];
+        int width = 0;
+        for (int n = 0; n < nodes; n ++) {
+            width = Math.max(width, ++ rankWidths[ranks[n]]);
+        }
+        return new Size(nodes, tails.length, (long) nodes * width);
+    }
+
+    /**
+     * The size of one or more diagrams, as far as their layout cost is
+     * concerned.
+     */
+    static final class Size {
+
+        static final Size EMPTY = new Size(0, 0, 0);
+
+        private final int nodes;
+        private final int edges;
+        private final long crossings;
+
+        /**
+         * @param crossings  the number of nodes times the number of nodes
+         *                   in the widest rank
+         */
+        Size(int nodes, int edges, long crossings) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.crossings = crossings;
+        }
+
+        int getNodes() {
+            return nodes;
+        }
+
+        int getEdges() {
+            return edges;
+        }
+
+        long getCrossings() {
+            return crossings;
+        }
+
+        /**
+         * Returns the total size of this and the specified diagrams, when
+         * they are laid out by the same process.
+         */
+        Size plus(Size size) {
+            return new Size(nodes + size.nodes, edges + size.edges, crossings + size.crossings);
+        }
+
+        double[] getFeatures() {
+            return new double[] { 1, nodes, edges, crossings };
+        }
+    }
+
+    private static final class Sample {
+        final Size size;
+        final long nanos;
+
+        Sample(Size size, long nanos) {
+            this.size = size;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Measures the Graphviz source written into it without keeping it: only
+     * the node names and the edges between them are kept.  This relies on
+     * the sources APIviz generates, with one statement per line.
+     */
+    static final class Meter implements Appendable {
+
+        private final StringBuilder line = new StringBuilder(128);
+        private boolean inAttributes;
+        private final Map<String, Integer> nodeIds = new HashMap<String, Integer>();
+        private final List<int[]> edges = new ArrayList<int[]>();
+
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i ++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        public Appendable append(char c) {
+            if (c == '\n') {
+                line.setLength(0);
+                inAttributes = false;
+            } else if (!inAttributes) {
+                if (c == '[') {
+                    // Only a node or an edge statement has attributes.
+                    inAttributes = true;
+                    readStatement(line.toString().trim());
+                } else {
+                    line.append(c);
+                }
+            }
+            return this;
+        }
+
+        private void readStatement(String statement) {
+            int arrow = statement.indexOf("->");
+            if (arrow >= 0) {
+                int tail = getNodeId(statement.substring(0, arrow).trim());
+                int head = getNodeId(statement.substring(arrow + 2).trim());
+                edges.add(new int[] { tail, head });
+            } else if (!statement.equals("node") && !statement.equals("edge") &&
+                       !statement.equals("graph")) {
+                getNodeId(statement);
+            }
+        }
+
+        private int getNodeId(String name) {
+            Integer id = nodeIds.get(name);
+            if (id == null) {
+                id = nodeIds.size();
+                nodeIds.put(name, id);
+            }
+            return id;
+        }
+
+        /**
+         * Returns the size of what was written so far.
+         */
+        Size getSize() {
+            int[] tails = new int[edges.size()];
+            int[] heads = new int[edges.size()];
+            for (int i = 0; i < tails.length; i ++) {
+                tails[i] = edges.get(i)[0];
+                heads[i] = edges.get(i)[1];
+            }
+            return measure(nodeIds.size(), tails, heads);
+        }
+    }
+}
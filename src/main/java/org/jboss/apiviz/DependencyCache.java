@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.apiviz.DependencyScanner.ClassDependencies;
+
+/**
+ * Records the dependencies of every class file analyzed for an output
+ * directory, so that the next run only has to parse the class files which
+ * changed.  A class file is identified by its path, or by the path of its
+ * archive and the name of its entry, and is considered unchanged if its
+ * size and either its last modified time or its CRC-32 are the same.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class DependencyCache {
+
+    static final String FILENAME = ".apiviz-dependencies";
+
+    private static final int MAGIC = 0x41504431; // "APD1"
+
+    private final File file;
+
+    /**
+     * Key = class file path<br>
+     * Value = entry recorded by the previous run
+     */
+    private final Map<String, Entry> oldEntries = new HashMap<String, Entry>();
+
+    /**
+     * Key = class file path<br>
+     * Value = entry recorded by this run
+     */
+    private final Map<String, Entry> newEntries = new TreeMap<String, Entry>();
+
+    DependencyCache(File outputDirectory) {
+        file = new File(outputDirectory, FILENAME);
+
+        try {
+            load();
+        } catch (IOException e) {
+            // Missing or corrupt; parse everything.
+            oldEntries.clear();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+
+            // The package names are shared by many classes.
+            String[] packageNames = new String[in.readInt()];
+            for (int i = 0; i < packageNames.length; i ++) {
+                packageNames[i] = in.readUTF();
+            }
+
+            for (int i = in.readInt(); i > 0; i --) {
+                String path = in.readUTF();
+                Entry e = new Entry(in, packageNames);
+                oldEntries.put(path, e);
+            }
+        } catch (RuntimeException e) {
+            // A negative count or an unknown package ID
+            throw new IOException("Corrupt " + file);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Returns the entry the previous run recorded for the specified class
+     * file if it did not change since then.
+     *
+     * @param crc the CRC-32 of the class file, or {@code -1} to compare the
+     *            last modified time instead
+     */
+    Entry get(String path, long length, long modified, long crc) {
+        Entry e;
+        synchronized (this) {
+            e = oldEntries.get(path);
+        }
+        if (e == null || e.length != length) {
+            return null;
+        }
+        if (crc < 0? e.modified != modified : e.crc != crc) {
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * Records the specified class file, which was analyzed by this run.
+     */
+    synchronized void put(String path, Entry entry) {
+        newEntries.put(path, entry);
+    }
+
+    /**
+     * Replaces the cache of the previous run with the class files recorded
+     * by this run.
+     */
+    synchronized void save() throws IOException {
+        Map<String, Integer> packageIds = new LinkedHashMap<String, Integer>();
+        for (Entry e: newEntries.values()) {
+            e.addPackageNames(packageIds);
+        }
+
+        File tmpFile = File.createTempFile("apiviz-", ".tmp", file.getParentFile());
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(packageIds.size());
+                for (String p: packageIds.keySet()) {
+                    out.writeUTF(p);
+                }
+                out.writeInt(newEntries.size());
+                for (Map.Entry<String, Entry> e: newEntries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    e.getValue().write(out, packageIds);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tmpFile.renameTo(file) && !FileUtil.moveFile(tmpFile, file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * An analyzed class file: its size, last modified time and CRC-32, and
+     * the packages its class depends on.
+     */
+    static final class Entry {
+        private final long length;
+        private final long modified;
+        private final long crc;
+        private final ClassDependencies dependencies;
+
+        Entry(long length, long modified, long crc, ClassDependencies dependencies) {
+            this.length = length;
+            this.modified = modified;
+            this.crc = crc;
+            this.dependencies = dependencies;
+        }
+
+        Entry(DataInputStream in, String[] packageNames) throws IOException {
+            length = in.readLong();
+            modified = in.readLong();
+            crc = in.readLong();
+            String className = in.readUTF();
+            int packageId = in.readInt();
+            String[] targets = new String[in.readInt()];
+            for (int i = 0; i < targets.length; i ++) {
+                targets[i] = packageNames[in.readInt()];
+            }
+            dependencies = new ClassDependencies(
+                    className, packageId < 0? null : packageNames[packageId], targets);
+        }
+
+        /**
+         * Returns this entry with the specified last modified time.
+         */
+        Entry touch(long modified) {
+            if (modified == this.modified) {
+                return this;
+            }
+            return new Entry(length, modified, crc, dependencies);
+        }
+
+        ClassDependencies getDependencies() {
+            return dependencies;
+        }
+
+        private void addPackageNames(Map<String, Integer> packageIds) {
+            if (dependencies.getPackageName() != null) {
+                addPackageName(packageIds, dependencies.getPackageName());
+            }
+            for (String p: dependencies.getDependencies()) {
+                addPackageName(packageIds, p);
+            }
+        }
+
+        private static void addPackageName(Map<String, Integer> packageIds, String packageName) {
+            if (!packageIds.containsKey(packageName)) {
+                packageIds.put(packageName, packageIds.size());
+            }
+        }
+
+        private void write(DataOutputStream out, Map<String, Integer> packageIds) throws IOException {
+            out.writeLong(length);
+            out.writeLong(modified);
+            out.writeLong(crc);
+            out.writeUTF(dependencies.getClassName());
+            String packageName = dependencies.getPackageName();
+            out.writeInt(packageName == null? -1 : packageIds.get(packageName));
+            String[] targets = dependencies.getDependencies();
+            out.writeInt(targets.length);
+            for (String p: targets) {
+                out.writeInt(packageIds.get(p));
+            }
+        }
+    }
+}
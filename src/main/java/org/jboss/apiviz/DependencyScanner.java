@@ -0,0 +1,576 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.sun.javadoc.DocErrorReporter;
+
+/**
+ * Finds the dependencies between packages by reading the constant pools of
+ * the compiled classes in directories and archives.  A class depends on
+ * every class its constant pool refers to and every class in the
+ * descriptors of its fields and methods.  The class files are
+ * memory-mapped, the archive entries are read without being extracted, and
+ * both are parsed in parallel.  Only the names of the classes and the
+ * package-to-package edges are kept.  The class files whose directory is
+ * not an analyzed package are never read, so that a class path full of
+ * third-party archives costs little more than listing their entries.
+ * With a {@link DependencyCache}, only
+ * the classes which changed since the previous run are parsed again.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class DependencyScanner {
+
+    private static final int FILES_PER_TASK = 64;
+
+    private final Set<String> packageNames;
+    private final Set<String> parentPackageNames = new HashSet<String>();
+    private final DependencyCache cache;
+    private final List<File> directories = new ArrayList<File>();
+    private final List<File> archives = new ArrayList<File>();
+    private final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    private final Set<String> classNames = new HashSet<String>();
+    private int classCount;
+
+    /**
+     * @param packageNames the packages to analyze; the classes of the other
+     *                     packages and the dependencies on them are ignored
+     * @param cache        the results of the previous run, or {@code null}
+     *                     to parse every class
+     */
+    DependencyScanner(Collection<String> packageNames, DependencyCache cache) {
+        this.packageNames = new HashSet<String>(packageNames);
+        this.cache = cache;
+        for (String p: packageNames) {
+            for (int i = p.indexOf('.'); i >= 0; i = p.indexOf('.', i + 1)) {
+                parentPackageNames.add(p.substring(0, i));
+            }
+        }
+    }
+
+    void addDirectory(File directory) {
+        directories.add(directory);
+    }
+
+    /**
+     * Adds a jar or a zip file.  Its class entries are read straight from
+     * the archive rather than being extracted.
+     */
+    void addArchive(File archive) {
+        archives.add(archive);
+    }
+
+    /**
+     * Parses every class file in the added directories and archives.  A
+     * class file which cannot be parsed is reported and skipped.
+     */
+    void analyze(DocErrorReporter reporter, int threads) throws IOException {
+        Stage stage = new Stage("depend", threads, threads * 4);
+        List<ZipFile> zips = new ArrayList<ZipFile>();
+        try {
+            List<File> files = new ArrayList<File>(FILES_PER_TASK);
+            for (File d: directories) {
+                files = submitClassFiles(stage, reporter, d, null, files);
+            }
+            if (!files.isEmpty()) {
+                submitClassFiles(stage, reporter, files);
+            }
+
+            for (File a: archives) {
+                ZipFile zip;
+                try {
+                    zip = new ZipFile(a);
+                } catch (IOException e) {
+                    reporter.printWarning("Failed to analyze " + a + ": " + e);
+                    continue;
+                }
+                zips.add(zip);
+                submitEntries(stage, reporter, zip);
+            }
+        } finally {
+            stage.join();
+            for (ZipFile zip: zips) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+        stage.rethrowFailure();
+    }
+
+    /**
+     * @param packageName  the package of the specified directory, or
+     *                     {@code null} if it is the root of the class path
+     */
+    private List<File> submitClassFiles(
+            Stage stage, DocErrorReporter reporter,
+            File directory, String packageName, List<File> files) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return files;
+        }
+
+        boolean analyzed = packageName != null && packageNames.contains(packageName);
+        for (File f: children) {
+            if (f.isDirectory()) {
+                String childPackageName =
+                    packageName == null? f.getName() : packageName + '.' + f.getName();
+                if (packageNames.contains(childPackageName) ||
+                    parentPackageNames.contains(childPackageName)) {
+                    files = submitClassFiles(stage, reporter, f, childPackageName, files);
+                }
+            } else if (analyzed && f.getName().endsWith(".class")) {
+                files.add(f);
+                if (files.size() >= FILES_PER_TASK) {
+                    submitClassFiles(stage, reporter, files);
+                    files = new ArrayList<File>(FILES_PER_TASK);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void submitClassFiles(
+            Stage stage, DocErrorReporter reporter, final List<File> files) throws IOException {
+        stage.submit(new Batch(reporter, files.size()) {
+            @Override
+            String getPath(int index) {
+                return files.get(index).getPath();
+            }
+
+            @Override
+            long getLength(int index) {
+                return files.get(index).length();
+            }
+
+            @Override
+            long getLastModified(int index) {
+                return files.get(index).lastModified();
+            }
+
+            @Override
+            long getCrc(int index) {
+                // Not known until the file is read
+                return -1;
+            }
+
+            @Override
+            ByteBuffer read(int index) throws IOException {
+                return map(files.get(index));
+            }
+        });
+    }
+
+    private void submitEntries(Stage stage, DocErrorReporter reporter, ZipFile zip) throws IOException {
+        List<ZipEntry> entries = new ArrayList<ZipEntry>(FILES_PER_TASK);
+        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+            ZipEntry entry = e.nextElement();
+            // The versioned classes of a multi-release jar are in
+            // META-INF/versions/, which is never an analyzed package.
+            if (entry.isDirectory() || !entry.getName().endsWith(".class") ||
+                !isAnalyzed(entry.getName())) {
+                continue;
+            }
+
+            entries.add(entry);
+            if (entries.size() >= FILES_PER_TASK) {
+                submitEntries(stage, reporter, zip, entries);
+                entries = new ArrayList<ZipEntry>(FILES_PER_TASK);
+            }
+        }
+        if (!entries.isEmpty()) {
+            submitEntries(stage, reporter, zip, entries);
+        }
+    }
+
+    private void submitEntries(
+            Stage stage, DocErrorReporter reporter,
+            final ZipFile zip, final List<ZipEntry> entries) throws IOException {
+        stage.submit(new Batch(reporter, entries.size()) {
+            @Override
+            String getPath(int index) {
+                return zip.getName() + "!/" + entries.get(index).getName();
+            }
+
+            @Override
+            long getLength(int index) {
+                return entries.get(index).getSize();
+            }
+
+            @Override
+            long getLastModified(int index) {
+                return entries.get(index).getTime();
+            }
+
+            @Override
+            long getCrc(int index) {
+                // Recorded in the central directory
+                return entries.get(index).getCrc();
+            }
+
+            @Override
+            ByteBuffer read(int index) throws IOException {
+                return ByteBuffer.wrap(FileUtil.readEntry(zip, entries.get(index)));
+            }
+        });
+    }
+
+    /**
+     * Returns {@code true} if the class file with the specified path, e.g.
+     * {@code java/util/Map$Entry.class}, is in an analyzed package.
+     */
+    private boolean isAnalyzed(String path) {
+        int i = path.lastIndexOf('/');
+        return i > 0 && packageNames.contains(path.substring(0, i).replace('/', '.'));
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel ch = in.getChannel();
+            // The mapping stays valid after the channel is closed.
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long computeCrc(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[Math.min(content.remaining(), 8192)];
+        ByteBuffer in = content.duplicate();
+        while (in.hasRemaining()) {
+            int length = Math.min(in.remaining(), buf.length);
+            in.get(buf, 0, length);
+            crc.update(buf, 0, length);
+        }
+        return crc.getValue();
+    }
+
+    private synchronized void merge(List<ClassDependencies> batch) {
+        for (ClassDependencies c: batch) {
+            classCount ++;
+
+            String packageName = c.getPackageName();
+            if (packageName == null || !packageNames.contains(packageName)) {
+                continue;
+            }
+            classNames.add(c.getClassName());
+
+            Set<String> targets = dependencies.get(packageName);
+            if (targets == null) {
+                targets = new HashSet<String>();
+                dependencies.put(packageName, targets);
+            }
+            for (String target: c.getDependencies()) {
+                if (packageNames.contains(target)) {
+                    targets.add(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the class file in the remaining bytes of the specified buffer.
+     *
+     * @throws IllegalArgumentException if the bytes are not a class file
+     */
+    static ClassDependencies scan(ByteBuffer in) {
+        try {
+            if (in.getInt() != ClassFile.MAGIC) {
+                throw new IllegalArgumentException("not a class file");
+            }
+            in.getInt(); // minor and major version
+
+            int constantCount = in.getShort() & 0xFFFF;
+            int[] offsets = new int[constantCount];
+            byte[] tags = new byte[constantCount];
+            for (int i = 1; i < constantCount; i ++) {
+                byte tag = in.get();
+                tags[i] = tag;
+                offsets[i] = in.position();
+                in.position(in.position() + ClassFile.getConstantLength(in, tag));
+                if (tag == ClassFile.CONSTANT_LONG || tag == ClassFile.CONSTANT_DOUBLE) {
+                    i ++;
+                }
+            }
+
+            in.getShort(); // access flags
+            String name = getUtf8(in, offsets, tags, getClassNameIndex(in, offsets, tags, in.getShort() & 0xFFFF));
+            String packageName = getPackageName(name, 0, name.length());
+            Set<String> targets = new HashSet<String>();
+
+            // The super class and the interfaces are in the constant pool.
+            in.getShort();
+            int interfaceCount = in.getShort() & 0xFFFF;
+            in.position(in.position() + 2 * interfaceCount);
+
+            // The descriptors of the fields and the methods
+            for (int j = 0; j < 2; j ++) {
+                for (int i = in.getShort() & 0xFFFF; i > 0; i --) {
+                    in.position(in.position() + 4);
+                    addDescriptor(targets, getUtf8(in, offsets, tags, in.getShort() & 0xFFFF));
+                    for (int k = in.getShort() & 0xFFFF; k > 0; k --) {
+                        in.getShort();
+                        int length = in.getInt();
+                        in.position(in.position() + length);
+                    }
+                }
+            }
+
+            for (int i = 1; i < constantCount; i ++) {
+                if (tags[i] == ClassFile.CONSTANT_CLASS) {
+                    String target = getUtf8(in, offsets, tags, getClassNameIndex(in, offsets, tags, i));
+                    if (target.startsWith("[")) {
+                        addDescriptor(targets, target);
+                    } else {
+                        addTarget(targets, target, 0, target.length());
+                    }
+                }
+            }
+            targets.remove(packageName);
+
+            return new ClassDependencies(
+                    name.replace('/', '.'), packageName,
+                    targets.toArray(new String[targets.size()]));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated class file");
+        } catch (IllegalArgumentException e) {
+            // Thrown by Buffer.position() beyond the end of the file
+            if (e.getMessage() == null) {
+                throw new IllegalArgumentException("truncated class file");
+            }
+            throw e;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("malformed class file");
+        }
+    }
+
+    private static int getClassNameIndex(ByteBuffer in, int[] offsets, byte[] tags, int index) {
+        if (tags[index] != ClassFile.CONSTANT_CLASS) {
+            throw new IllegalArgumentException("not a class: " + index);
+        }
+        return in.getShort(offsets[index]) & 0xFFFF;
+    }
+
+    private static String getUtf8(ByteBuffer in, int[] offsets, byte[] tags, int index) {
+        if (tags[index] != ClassFile.CONSTANT_UTF8) {
+            throw new IllegalArgumentException("not a string: " + index);
+        }
+        return ClassFile.decodeUtf8(in, offsets[index]);
+    }
+
+    /**
+     * Adds the package of every class in the specified field, method or
+     * array descriptor, e.g. {@code (Ljava/lang/String;[I)Ljava/util/List;}.
+     */
+    private static void addDescriptor(Set<String> targets, String descriptor) {
+        for (int i = descriptor.indexOf('L'); i >= 0; i = descriptor.indexOf('L', i)) {
+            int end = descriptor.indexOf(';', i);
+            if (end < 0) {
+                throw new IllegalArgumentException("malformed descriptor: " + descriptor);
+            }
+            addTarget(targets, descriptor, i + 1, end);
+            i = end + 1;
+        }
+    }
+
+    private static void addTarget(Set<String> targets, String s, int start, int end) {
+        String packageName = getPackageName(s, start, end);
+        if (packageName != null) {
+            targets.add(packageName);
+        }
+    }
+
+    /**
+     * Returns the package of the internal class name in the specified range,
+     * or {@code null} if it is in the unnamed package.
+     */
+    private static String getPackageName(String s, int start, int end) {
+        int i = s.lastIndexOf('/', end - 1);
+        if (i <= start) {
+            return null;
+        }
+        return s.substring(start, i).replace('/', '.');
+    }
+
+    /**
+     * Returns the number of the parsed class files, which are those in the
+     * analyzed packages.
+     */
+    synchronized int countClasses() {
+        return classCount;
+    }
+
+    /**
+     * Returns {@code true} if and only if the class with the specified binary
+     * name, e.g. {@code java.util.Map$Entry}, was found.
+     */
+    synchronized boolean containsClass(String className) {
+        return classNames.contains(className);
+    }
+
+    /**
+     * Returns the packages each package with at least one class depends on,
+     * keyed by the package name.
+     */
+    synchronized Map<String, Set<String>> getDependencies() {
+        return Collections.unmodifiableMap(dependencies);
+    }
+
+    /**
+     * The packages a class depends on, whether or not they are analyzed.
+     */
+    static final class ClassDependencies {
+        private final String className;
+        private final String packageName;
+        private final String[] dependencies;
+
+        ClassDependencies(String className, String packageName, String[] dependencies) {
+            this.className = className;
+            this.packageName = packageName;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Returns the binary name, e.g. {@code java.util.Map$Entry}.
+         */
+        String getClassName() {
+            return className;
+        }
+
+        /**
+         * Returns the package name, or {@code null} for the unnamed package.
+         */
+        String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * Returns the other packages this class depends on.
+         */
+        String[] getDependencies() {
+            return dependencies;
+        }
+    }
+
+    /**
+     * A task which parses a batch of class files and collects the results
+     * of the whole batch before merging them, so that the threads rarely
+     * contend for the lock.
+     */
+    private abstract class Batch implements Callable<Object> {
+        private final DocErrorReporter reporter;
+        private final int size;
+
+        Batch(DocErrorReporter reporter, int size) {
+            this.reporter = reporter;
+            this.size = size;
+        }
+
+        abstract String getPath(int index);
+
+        abstract long getLength(int index);
+
+        abstract long getLastModified(int index);
+
+        /**
+         * Returns the CRC-32 of the content, or {@code -1} if it is not
+         * known without reading the content.
+         */
+        abstract long getCrc(int index);
+
+        abstract ByteBuffer read(int index) throws IOException;
+
+        public Object call() throws Exception {
+            List<ClassDependencies> batch = new ArrayList<ClassDependencies>(size);
+            for (int i = 0; i < size; i ++) {
+                try {
+                    batch.add(analyze(i));
+                } catch (IOException e) {
+                    reporter.printWarning("Failed to analyze " + getPath(i) + ": " + e);
+                } catch (IllegalArgumentException e) {
+                    reporter.printWarning("Failed to analyze " + getPath(i) + ": " + e);
+                }
+            }
+            merge(batch);
+            return null;
+        }
+
+        private ClassDependencies analyze(int index) throws IOException {
+            if (cache == null) {
+                return scan(read(index));
+            }
+
+            String path = getPath(index);
+            long length = getLength(index);
+            long modified = getLastModified(index);
+            long crc = getCrc(index);
+            DependencyCache.Entry e = cache.get(path, length, modified, crc);
+            ByteBuffer content = null;
+            if (e == null && crc < 0) {
+                // The file was touched; see if its content changed.
+                content = read(index);
+                crc = computeCrc(content);
+                e = cache.get(path, length, modified, crc);
+            }
+
+            if (e == null) {
+                if (content == null) {
+                    content = read(index);
+                }
+                if (crc < 0) {
+                    crc = computeCrc(content);
+                }
+                e = new DependencyCache.Entry(length, modified, crc, scan(content));
+            }
+            cache.put(path, e.touch(modified));
+            return e.getDependencies();
+        }
+    }
+}
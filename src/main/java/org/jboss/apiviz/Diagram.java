@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A diagram to be rendered by Graphviz and inserted into a generated HTML
+ * page.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class Diagram {
+
+    private final File outputDirectory;
+    private final String filename;
+    private final String source;
+    private final ImageFormat format;
+    private final File htmlFile;
+    private final File imageFile;
+    private volatile String map;
+    private volatile LayoutQuality quality = LayoutQuality.BEST;
+    private volatile CostModel.Size size;
+    private String fingerprint;
+    private String fingerprintVersion;
+
+    Diagram(File outputDirectory, String filename, String source, ImageFormat format) {
+        this.outputDirectory = outputDirectory;
+        this.filename = filename;
+        this.source = source;
+        this.format = format;
+        htmlFile = new File(outputDirectory, filename + ".html");
+        imageFile = new File(outputDirectory, filename + '.' + format.getExtension());
+    }
+
+    File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * Returns the path of the diagram relative to the output directory,
+     * without an extension.
+     */
+    String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Returns the Graphviz source of the diagram.
+     */
+    String getSource() {
+        return source;
+    }
+
+    ImageFormat getFormat() {
+        return format;
+    }
+
+    File getHtmlFile() {
+        return htmlFile;
+    }
+
+    File getImageFile() {
+        return imageFile;
+    }
+
+    /**
+     * Returns the client-side image map rendered along with the image, or
+     * {@code null} if the image format does not need one or the diagram
+     * was not rendered yet.  The map is kept in memory only; it ends up in
+     * the HTML page rather than in a file of its own.
+     */
+    String getMap() {
+        return map;
+    }
+
+    void setMap(String map) {
+        this.map = map;
+    }
+
+    /**
+     * Returns the quality the image was laid out with, which is less than
+     * the best if Graphviz ran out of time.
+     */
+    LayoutQuality getQuality() {
+        return quality;
+    }
+
+    void setQuality(LayoutQuality quality) {
+        this.quality = quality;
+    }
+
+    /**
+     * Returns the size the layout cost of the diagram was estimated from,
+     * or {@code null} if it was not measured.
+     */
+    CostModel.Size getSize() {
+        return size;
+    }
+
+    void setSize(CostModel.Size size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns the hash of everything the rendered image depends on: the
+     * Graphviz source, the image format and the Graphviz version.  The
+     * source is generated from the nodes and edges in the diagram, their
+     * tags and the options, so a diagram whose fingerprint did not change
+     * renders to the same image.
+     */
+    synchronized String getFingerprint(String graphvizVersion) {
+        if (graphvizVersion == null) {
+            graphvizVersion = "";
+        }
+
+        if (fingerprint != null && graphvizVersion.equals(fingerprintVersion)) {
+            return fingerprint;
+        }
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+            md.update(graphvizVersion.getBytes("UTF-8"));
+            md.update((byte) 0);
+            md.update(format.getExtension().getBytes("UTF-8"));
+            md.update((byte) 0);
+            md.update(source.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] digest = md.digest();
+        StringBuilder buf = new StringBuilder(digest.length * 2);
+        for (byte b: digest) {
+            buf.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            buf.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        fingerprint = buf.toString();
+        fingerprintVersion = graphvizVersion;
+        return fingerprint;
+    }
+
+    boolean needsBottomMargin() {
+        return filename.contains("overview-summary") || filename.contains("package-summary");
+    }
+
+    @Override
+    public String toString() {
+        return filename;
+    }
+}
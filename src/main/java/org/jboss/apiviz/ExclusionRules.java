@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.sun.javadoc.Doc;
+import com.sun.javadoc.Tag;
+
+/**
+ * The {@value Constant#TAG_EXCLUDE} rules of a class or a package, compiled
+ * into a single pattern.  The verdict for each qualified name is memoized,
+ * so that an exclusion check on the rendering path is usually a lookup.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class ExclusionRules {
+
+    static final ExclusionRules NONE = new ExclusionRules(new Pattern[0]);
+
+    /**
+     * Back references, quotations and comments would not survive being
+     * wrapped into an alternation, and named groups could be defined twice.
+     */
+    private static final Pattern UNSAFE_TO_COMBINE =
+        Pattern.compile("\\\\([1-9]|k<|Q)|\\(\\?[a-zA-Z-]*x|\\(\\?<[a-zA-Z]");
+
+    static ExclusionRules parse(Doc doc) {
+        List<String> rules = new ArrayList<String>();
+        for (Tag t: doc.tags(TAG_EXCLUDE)) {
+            if (t.text() == null || t.text().trim().length() == 0) {
+                // Handled by NodeAttributes.isHidden().
+                continue;
+            }
+
+            rules.add(t.text().trim());
+        }
+        return compile(rules);
+    }
+
+    /**
+     * Compiles the specified regular expressions.
+     */
+    static ExclusionRules compile(List<String> rules) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String r: rules) {
+            patterns.add(Pattern.compile(r));
+        }
+
+        if (patterns.isEmpty()) {
+            return NONE;
+        }
+        return new ExclusionRules(patterns.toArray(new Pattern[patterns.size()]));
+    }
+
+    private final Pattern[] patterns;
+    private final ConcurrentMap<String, Boolean> verdicts =
+        new ConcurrentHashMap<String, Boolean>();
+
+    private ExclusionRules(Pattern[] patterns) {
+        this.patterns = combine(patterns);
+    }
+
+    /**
+     * Joins the patterns into an alternation, except for the ones which
+     * are unsafe to combine.
+     */
+    private static Pattern[] combine(Pattern[] patterns) {
+        if (patterns.length <= 1) {
+            return patterns;
+        }
+
+        List<Pattern> result = new ArrayList<Pattern>();
+        StringBuilder buf = new StringBuilder();
+        for (Pattern p: patterns) {
+            if (UNSAFE_TO_COMBINE.matcher(p.pattern()).find()) {
+                result.add(p);
+                continue;
+            }
+
+            if (buf.length() > 0) {
+                buf.append('|');
+            }
+            buf.append("(?:");
+            buf.append(p.pattern());
+            buf.append(')');
+        }
+
+        if (buf.length() > 0) {
+            result.add(0, Pattern.compile(buf.toString()));
+        }
+        return result.toArray(new Pattern[result.size()]);
+    }
+
+    /**
+     * Returns the number of patterns a qualified name is matched against.
+     */
+    int countPatterns() {
+        return patterns.length;
+    }
+
+    boolean isEmpty() {
+        return patterns.length == 0;
+    }
+
+    /**
+     * Returns {@code true} if any rule matches (i.e. is found in) the
+     * specified qualified name.
+     */
+    boolean excludes(String qualifiedName) {
+        if (patterns.length == 0) {
+            return false;
+        }
+
+        Boolean verdict = verdicts.get(qualifiedName);
+        if (verdict == null) {
+            verdict = Boolean.FALSE;
+            for (Pattern p: patterns) {
+                if (p.matcher(qualifiedName).find()) {
+                    verdict = Boolean.TRUE;
+                    break;
+                }
+            }
+            verdicts.put(qualifiedName, verdict);
+        }
+        return verdict.booleanValue();
+    }
+}
@@ -23,9 +23,13 @@
 package org.jboss.apiviz;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * @author The APIviz Project (apiviz-dev@lists.jboss.org)
@@ -37,6 +41,13 @@ import java.io.RandomAccessFile;
 public class FileUtil {
 
     public static String readFile(File file) throws IOException {
+        return new String(readBytes(file), "ISO-8859-1");
+    }
+
+    /**
+     * Reads the content of a file as it is.
+     */
+    public static byte[] readBytes(File file) throws IOException {
         byte[] byteContent;
         RandomAccessFile in = new RandomAccessFile(file, "r");
         try {
@@ -49,14 +60,60 @@ public class FileUtil {
                 // Ignore.
             }
         }
+        return byteContent;
+    }
+
+    /**
+     * Reads the uncompressed content of an entry without extracting it.
+     */
+    public static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+        InputStream in = zip.getInputStream(entry);
+        try {
+            long size = entry.getSize();
+            byte[] buf = new byte[size >= 0? (int) size : 8192];
+            int length = 0;
+            for (;;) {
+                if (length == buf.length) {
+                    int b = in.read();
+                    if (b < 0) {
+                        break;
+                    }
+                    // The size was unknown or wrong.
+                    byte[] newBuf = new byte[Math.max(buf.length * 2, 8192)];
+                    System.arraycopy(buf, 0, newBuf, 0, length);
+                    buf = newBuf;
+                    buf[length ++] = (byte) b;
+                }
+                int readBytes = in.read(buf, length, buf.length - length);
+                if (readBytes < 0) {
+                    break;
+                }
+                length += readBytes;
+            }
 
-        return new String(byteContent, "ISO-8859-1");
+            if (length == buf.length) {
+                return buf;
+            }
+            byte[] content = new byte[length];
+            System.arraycopy(buf, 0, content, 0, length);
+            return content;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
     }
 
     public static void writeFile(File file, String content) throws IOException {
+        writeFile(file, content, "ISO-8859-1");
+    }
+
+    public static void writeFile(File file, String content, String encoding) throws IOException {
         FileOutputStream out = new FileOutputStream(file);
         try {
-            out.write(content.getBytes("ISO-8859-1"));
+            out.write(content.getBytes(encoding));
         } finally {
             try {
                 out.close();
@@ -66,6 +123,51 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Moves a file, falling back to copying when it can't be renamed (e.g.
+     * across file systems).
+     *
+     * @return {@code true} if and only if the file has been moved
+     */
+    public static boolean moveFile(File src, File dst) throws IOException {
+        dst.delete();
+        if (src.renameTo(dst)) {
+            return true;
+        }
+
+        copyFile(src, dst);
+        return src.delete();
+    }
+
+    public static void copyFile(File src, File dst) throws IOException {
+        FileInputStream in = new FileInputStream(src);
+        try {
+            FileOutputStream out = new FileOutputStream(dst);
+            try {
+                byte[] buf = new byte[8192];
+                for (;;) {
+                    int readBytes = in.read(buf);
+                    if (readBytes < 0) {
+                        break;
+                    }
+                    out.write(buf, 0, readBytes);
+                }
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
     private FileUtil() {
         // Unused
     }
@@ -23,12 +23,16 @@
 package org.jboss.apiviz;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.sun.javadoc.RootDoc;
 
@@ -42,8 +46,14 @@ import com.sun.javadoc.RootDoc;
 public class Graphviz {
     public static final String GRAPHVIZ_EXECUTABLE_FIRST_LINE_CHECK = "^.*[Gg][Rr][Aa][Pp][Hh][Vv][Ii][Zz].*$";
 
+    /**
+     * The time {@code dot -V} may take in milliseconds.
+     */
+    private static final long VERSION_TIMEOUT = 60000;
+
     private static boolean homeDetermined;
     private static File home;
+    private static String version;
 
     private static String getExecutable(RootDoc root) {
         String command = "dot";
@@ -124,112 +134,415 @@ public class Graphviz {
         }
         root.printNotice("Graphviz Executable: " + executable);
 
-        Process p;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
-            p = pb.start();
+            execute(root, pb, out, VERSION_TIMEOUT);
         } catch (IOException e) {
             root.printWarning(e.getMessage());
             return false;
         }
 
         BufferedReader in = new BufferedReader(
-                new InputStreamReader(p.getInputStream()));
-        OutputStream out = p.getOutputStream();
+                new StringReader(out.toString()));
         try {
-            out.close();
-
             String line = null;
             while((line = in.readLine()) != null) {
                 if (line.matches(GRAPHVIZ_EXECUTABLE_FIRST_LINE_CHECK)) {
                     root.printNotice("Graphviz Version: " + line);
+                    version = line;
                     return true;
                 }
                 root.printWarning("Unknown Graphviz output: " + line);
             }
             return false;
         } catch (IOException e) {
-            root.printWarning("Problem detecting Graphviz: " + e.getMessage());
-            return false;
+            // Shouldn't happen.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the version string reported by Graphviz, or {@code null} if
+     * {@link #isAvailable(RootDoc)} did not succeed yet.
+     */
+    public static String getVersion() {
+        return version;
+    }
+
+    public static void writeImageAndMap(
+            RootDoc root,
+            String diagram, File outputDirectory, String filename) throws IOException {
+        Diagram d = new Diagram(outputDirectory, filename, diagram, ImageFormat.PNG);
+        Result<Object> result = new Result<Object>();
+        writeImage(root, d, LayoutQuality.BEST, 0, null, result);
+        result.get();
+        FileUtil.writeFile(new File(outputDirectory, filename + ".map"), d.getMap());
+    }
+
+    /**
+     * Starts rendering the image of the specified diagram and returns
+     * without waiting for Graphviz.  If the image format needs an image
+     * map, it is read from the standard output of Graphviz into
+     * {@link Diagram#setMap(String)}, so that a failed rendering does not
+     * leave a stray map file behind.
+     *
+     * @param timeout          the time Graphviz may take in milliseconds,
+     *                         or {@code 0} for no limit
+     * @param completionStage  runs the callback once Graphviz exited, or
+     *                         {@code null} to run it on the polling thread.
+     *                         It must not make its submitter wait.
+     * @param callback         fails with a
+     *                         {@link ProcessPoller.TimeoutException} if
+     *                         Graphviz did not finish in time
+     * @throws IOException if Graphviz could not be started, in which case
+     *                     the callback is never run
+     */
+    static void writeImage(
+            RootDoc root, final Diagram diagram,
+            LayoutQuality quality, long timeout,
+            Stage completionStage, final Callback<Object> callback) throws IOException {
+        File imageFile = diagram.getImageFile();
+        boolean usesImageMap = diagram.getFormat().usesImageMap();
+
+        imageFile.delete();
+        diagram.setMap(null);
+
+        List<String> command = new ArrayList<String>();
+        command.add(Graphviz.getExecutable(root));
+        if (quality.getEngine() != null) {
+            command.add("-K" + quality.getEngine());
+        }
+        addFormatOptions(command, diagram.getFormat());
+        command.add("-o");
+        command.add(imageFile.getAbsolutePath());
+        final ByteArrayOutputStream map;
+        if (usesImageMap) {
+            // No -o; the map goes to the standard output.
+            command.add("-Tcmapx");
+            map = new ByteArrayOutputStream(4096);
+        } else {
+            map = null;
+        }
+
+        // The source is read from a file rather than the standard input,
+        // which could fill up while Graphviz is busy printing warnings.
+        final File sourceFile = File.createTempFile("apiviz-", ".gv");
+        boolean started = false;
+        try {
+            FileUtil.writeFile(sourceFile, quality.apply(diagram.getSource()), "UTF-8");
+            command.add(sourceFile.getAbsolutePath());
+
+            start(root, new ProcessBuilder(command), map, timeout, completionStage, new Callback<Integer>() {
+                public void completed(Integer result) throws Exception {
+                    sourceFile.delete();
+                    if (result != 0) {
+                        callback.failed(new IllegalStateException("Graphviz exited with a non-zero return value: " + result));
+                        return;
+                    }
+                    if (map != null) {
+                        diagram.setMap(map.toString("ISO-8859-1"));
+                    }
+                    callback.completed(null);
+                }
+
+                public void failed(Exception cause) throws Exception {
+                    sourceFile.delete();
+                    callback.failed(cause);
+                }
+            });
+            started = true;
         } finally {
-            try {
-                out.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
+            if (!started) {
+                sourceFile.delete();
             }
+        }
+    }
+
+    private static void addFormatOptions(List<String> command, ImageFormat format) {
+        command.add("-T" + format.getExtension());
+        if (!format.usesImageMap()) {
+            // The image is embedded with an <OBJECT>, so its links have to
+            // leave the object and open in the page (or frame) it is in.
+            command.add("-Ntarget=_parent");
+        }
+    }
+
+    /**
+     * Starts rendering the specified diagrams, which must be of the same
+     * image format, with a single Graphviz process, and returns without
+     * waiting for it.
+     *
+     * @param timeout          the time Graphviz may take in milliseconds,
+     *                         or {@code 0} for no limit
+     * @param completionStage  runs the callback once Graphviz exited, or
+     *                         {@code null} to run it on the polling thread.
+     *                         It must not make its submitter wait.
+     * @param callback         completes with the diagrams which were not
+     *                         rendered successfully.  They have to be
+     *                         rendered again one by one to find out which
+     *                         one is actually broken.
+     * @throws IOException if Graphviz could not be started, in which case
+     *                     the callback is never run
+     */
+    static void writeImages(
+            RootDoc root, final List<Diagram> diagrams, long timeout,
+            Stage completionStage, final Callback<List<Diagram>> callback) throws IOException {
 
-            try {
-                in.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
+        final File workDirectory = File.createTempFile("apiviz-", ".tmp");
+        workDirectory.delete();
+        if (!workDirectory.mkdir()) {
+            throw new IOException("Failed to create a directory: " + workDirectory);
+        }
+
+        boolean started = false;
+        try {
+            final ImageFormat format = diagrams.get(0).getFormat();
+            List<String> command = new ArrayList<String>();
+            command.add(Graphviz.getExecutable(root));
+            if (format.usesImageMap()) {
+                command.add("-Tcmapx");
             }
+            addFormatOptions(command, format);
+            // Let Graphviz choose the output file names: <input>.<format>
+            command.add("-O");
 
-            for (;;) {
-                try {
-                    p.waitFor();
-                    break;
-                } catch (InterruptedException e) {
-                    // Ignore
+            final File[] sourceFiles = new File[diagrams.size()];
+            for (int i = 0; i < sourceFiles.length; i ++) {
+                Diagram d = diagrams.get(i);
+                d.getImageFile().delete();
+                d.setMap(null);
+
+                sourceFiles[i] = new File(workDirectory, i + ".gv");
+                FileUtil.writeFile(sourceFiles[i], d.getSource(), "UTF-8");
+                command.add(sourceFiles[i].getAbsolutePath());
+            }
+
+            start(root, new ProcessBuilder(command), null, timeout, completionStage, new Callback<Integer>() {
+                public void completed(Integer result) throws Exception {
+                    List<Diagram> failedDiagrams;
+                    try {
+                        if (result != 0) {
+                            // We can't tell which outputs are complete.
+                            failedDiagrams = diagrams;
+                        } else {
+                            failedDiagrams = moveImages(diagrams, sourceFiles, format);
+                        }
+                    } finally {
+                        deleteDirectory(workDirectory);
+                    }
+                    callback.completed(failedDiagrams);
                 }
+
+                public void failed(Exception cause) throws Exception {
+                    deleteDirectory(workDirectory);
+                    callback.failed(cause);
+                }
+            });
+            started = true;
+        } finally {
+            if (!started) {
+                deleteDirectory(workDirectory);
             }
         }
     }
 
-    public static void writeImageAndMap(
-            RootDoc root,
-            String diagram, File outputDirectory, String filename) throws IOException {
+    /**
+     * Moves the images rendered by {@link #writeImages} to the output
+     * directory.  The image maps stay in the work directory; they are
+     * read into {@link Diagram#setMap(String)}.
+     *
+     * @return the diagrams which were not rendered successfully
+     */
+    private static List<Diagram> moveImages(
+            List<Diagram> diagrams, File[] sourceFiles, ImageFormat format) throws IOException {
+        List<Diagram> failedDiagrams = new ArrayList<Diagram>();
+        for (int i = 0; i < sourceFiles.length; i ++) {
+            Diagram d = diagrams.get(i);
+            File imageFile = new File(sourceFiles[i].getPath() + '.' + format.getExtension());
+            File mapFile = new File(sourceFiles[i].getPath() + ".cmapx");
+            if (!imageFile.isFile() ||
+                format.usesImageMap() && !mapFile.isFile()) {
+                failedDiagrams.add(d);
+                continue;
+            }
+            if (format.usesImageMap()) {
+                d.setMap(FileUtil.readFile(mapFile));
+            }
+            if (!FileUtil.moveFile(imageFile, d.getImageFile())) {
+                d.setMap(null);
+                failedDiagrams.add(d);
+            }
+        }
+        return failedDiagrams;
+    }
 
-        File pngFile = new File(outputDirectory, filename + ".png");
-        File mapFile = new File(outputDirectory, filename + ".map");
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f: files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
 
-        pngFile.delete();
-        mapFile.delete();
+    /**
+     * Runs Graphviz and waits until it exits.
+     *
+     * @return the exit value of the process
+     * @see #start(RootDoc, ProcessBuilder, OutputStream, long, Stage, Callback)
+     */
+    private static int execute(
+            RootDoc root, ProcessBuilder pb,
+            OutputStream output, long timeout) throws IOException {
+        Result<Integer> result = new Result<Integer>();
+        start(root, pb, output, timeout, null, result);
+        return result.get();
+    }
+
+    /**
+     * Starts Graphviz and returns without waiting for it to exit.  The
+     * standard output of the process is copied to the specified stream (if
+     * not {@code null}); everything else it prints is echoed to
+     * {@link System#err}.  The output is read, and the process is waited
+     * for, by the {@link ProcessPoller} rather than by this thread.
+     *
+     * @param timeout          the time Graphviz may take in milliseconds,
+     *                         or {@code 0} for no limit
+     * @param completionStage  runs the callback with the exit value of the
+     *                         process, or {@code null} to run it on the
+     *                         polling thread
+     */
+    private static void start(
+            RootDoc root, ProcessBuilder pb,
+            OutputStream output, long timeout,
+            final Stage completionStage, final Callback<Integer> callback) throws IOException {
 
-        ProcessBuilder pb = new ProcessBuilder(
-                Graphviz.getExecutable(root),
-                "-Tcmapx", "-o", mapFile.getAbsolutePath(),
-                "-Tpng",   "-o", pngFile.getAbsolutePath());
-        pb.redirectErrorStream(true);
         File gvizHome = Graphviz.getHome(root);
         if (gvizHome != null) {
             pb.directory(gvizHome);
         }
 
         Process p = pb.start();
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(p.getInputStream()));
-        Writer out = new OutputStreamWriter(p.getOutputStream(), "UTF-8");
-        try {
-            out.write(diagram);
-            out.close();
+        ProcessPoller.watch(
+                p, output != null? output : new EchoOutputStream(),
+                new EchoOutputStream(), timeout, new ProcessPoller.Listener() {
+                    public void done(final Future<Integer> result) {
+                        Callable<Object> completion = new Callable<Object>() {
+                            public Object call() throws Exception {
+                                int exitValue;
+                                try {
+                                    // Done already; get() does not wait.
+                                    exitValue = result.get();
+                                } catch (ExecutionException e) {
+                                    Throwable cause = e.getCause();
+                                    if (cause instanceof Exception) {
+                                        callback.failed((Exception) cause);
+                                        return null;
+                                    }
+                                    throw new IllegalStateException(cause);
+                                }
+                                callback.completed(exitValue);
+                                return null;
+                            }
+                        };
+                        try {
+                            if (completionStage == null) {
+                                completion.call();
+                            } else {
+                                completionStage.submit(completion);
+                            }
+                        } catch (Exception e) {
+                            // The stage failed or was shut down, and the
+                            // failure is reported by its owner.
+                        }
+                    }
+                });
+    }
 
-            String line = null;
-            while((line = in.readLine()) != null) {
-                System.err.println(line);
-            }
-        } finally {
-            try {
-                out.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
-            }
+    /**
+     * Receives the outcome of a Graphviz process.
+     */
+    interface Callback<T> {
+        void completed(T result) throws Exception;
+        void failed(Exception cause) throws Exception;
+    }
 
-            try {
-                in.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
-            }
+    /**
+     * A callback which lets the caller wait for the outcome.
+     */
+    private static final class Result<T> implements Callback<T> {
 
-            for (;;) {
+        private boolean done;
+        private T result;
+        private Exception cause;
+
+        public synchronized void completed(T result) {
+            this.result = result;
+            done = true;
+            notifyAll();
+        }
+
+        public synchronized void failed(Exception cause) {
+            this.cause = cause;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized T get() throws IOException {
+            boolean interrupted = false;
+            while (!done) {
                 try {
-                    int result = p.waitFor();
-                    if (result != 0) {
-                        throw new IllegalStateException("Graphviz exited with a non-zero return value: " + result);
-                    }
-                    break;
+                    wait();
                 } catch (InterruptedException e) {
-                    // Ignore
+                    interrupted = true;
                 }
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause != null) {
+                throw new IllegalStateException(cause);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Echoes what is written into it to {@link System#err} line by line.
+     */
+    private static class EchoOutputStream extends OutputStream {
+
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                flush();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i ++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (line.size() > 0) {
+                System.err.println(line.toString());
+                line.reset();
+            }
         }
     }
 
@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The HTML pages in an output directory, listed once so that looking a page
+ * up does not have to ask the file system every time.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class HtmlIndex {
+
+    private static final String SUFFIX = ".html";
+
+    private final File directory;
+
+    /**
+     * The paths of the pages relative to the directory, without the
+     * extension, or {@code null} if every page is assumed to exist
+     */
+    private final Set<String> pages;
+
+    HtmlIndex(File directory) {
+        this(directory, true);
+    }
+
+    /**
+     * @param list  {@code false} to assume that every page exists, when
+     *              the diagrams are generated without the pages
+     */
+    HtmlIndex(File directory, boolean list) {
+        this.directory = directory;
+        if (list) {
+            pages = new HashSet<String>();
+            list(directory, "");
+        } else {
+            pages = null;
+        }
+    }
+
+    private void list(File dir, String prefix) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File f: files) {
+            String name = f.getName();
+            if (f.isDirectory()) {
+                list(f, prefix + name + File.separatorChar);
+            } else if (name.endsWith(SUFFIX)) {
+                pages.add(prefix + name.substring(0, name.length() - SUFFIX.length()));
+            }
+        }
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns {@code true} if and only if the page with the specified path
+     * (relative to the directory, without the extension) exists.
+     */
+    boolean contains(String filename) {
+        return pages == null || pages.contains(filename);
+    }
+}
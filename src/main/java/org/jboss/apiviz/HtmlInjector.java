@@ -0,0 +1,247 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Inserts a piece of HTML into a page generated by the standard doclet.
+ * The page is streamed through a byte-level scanner, which looks for the
+ * first of the following insertion points, into a temporary file that
+ * replaces the page when complete:
+ * <ul>
+ * <li>right after a {@code </PRE>} followed by whitespace and {@code <P>}
+ *     (JDK 1.5 and 1.6),</li>
+ * <li>right before {@code <TABLE BORDER="1"} (JDK 1.5 and 1.6), or</li>
+ * <li>right before {@code <div class="contentContainer">} (JDK 1.7+).</li>
+ * </ul>
+ * The bytes are copied as they are, so the encoding of the page does not
+ * matter as long as it is a superset of ASCII.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class HtmlInjector {
+
+    private static final byte[] PRE_END = ascii("</PRE>");
+    private static final byte[] PARAGRAPH = ascii("<P>");
+    private static final byte[] TABLE = ascii("<TABLE BORDER=\"1\"");
+    private static final byte[] CONTENT = ascii("<div class=\"contentContainer\">");
+    private static final byte[][] MARKERS = { TABLE, CONTENT };
+
+    private static final int NO_MATCH = -1;
+    private static final int NEED_MORE = -2;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Inserts the specified content into the specified page.
+     *
+     * @throws IllegalStateException if the page has no insertion point
+     */
+    static void inject(File htmlFile, byte[] content) throws IOException {
+        File tmpFile = File.createTempFile("apiviz-", ".tmp", htmlFile.getParentFile());
+        boolean done = false;
+        try {
+            InputStream in = new FileInputStream(htmlFile);
+            try {
+                OutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    inject(in, out, content);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+
+            // rename(2) replaces the page atomically on POSIX file systems.
+            if (!tmpFile.renameTo(htmlFile) && !FileUtil.moveFile(tmpFile, htmlFile)) {
+                throw new IOException("Failed to replace " + htmlFile);
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Copies the specified page with the specified content inserted.
+     *
+     * @throws IllegalStateException if the page has no insertion point
+     */
+    static void inject(InputStream in, OutputStream out, byte[] content) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int start = 0; // The first byte which was not written yet
+        int end = 0;   // The end of the bytes read so far
+        int pos = 0;   // The next candidate position
+        boolean eof = false;
+
+        for (;;) {
+            // Look for an insertion point in the buffer.
+            int insertionPoint = NO_MATCH;
+            for (; pos < end; pos ++) {
+                insertionPoint = match(buf, pos, end, eof);
+                if (insertionPoint != NO_MATCH) {
+                    break;
+                }
+            }
+
+            if (insertionPoint >= 0) {
+                out.write(buf, start, insertionPoint - start);
+                out.write(content);
+                out.write(buf, insertionPoint, end - insertionPoint);
+                for (;;) {
+                    int readBytes = in.read(buf);
+                    if (readBytes < 0) {
+                        return;
+                    }
+                    out.write(buf, 0, readBytes);
+                }
+            }
+
+            if (eof) {
+                throw new IllegalStateException(
+                        "Failed to find an insertion point.");
+            }
+
+            // Flush what can't be a part of an insertion point and keep the
+            // undecided rest, growing the buffer if it is full.
+            out.write(buf, start, pos - start);
+            int remaining = end - pos;
+            if (remaining == buf.length) {
+                byte[] newBuf = new byte[buf.length << 1];
+                System.arraycopy(buf, pos, newBuf, 0, remaining);
+                buf = newBuf;
+            } else {
+                System.arraycopy(buf, pos, buf, 0, remaining);
+            }
+            start = pos = 0;
+            end = remaining;
+
+            // Fill the buffer up so that an undecided marker is not scanned
+            // again for every few bytes read.
+            while (end < buf.length) {
+                int readBytes = in.read(buf, end, buf.length - end);
+                if (readBytes < 0) {
+                    eof = true;
+                    break;
+                }
+                end += readBytes;
+            }
+        }
+    }
+
+    /**
+     * Returns the insertion point if an insertion marker starts at the
+     * specified position, {@link #NO_MATCH} if not, or {@link #NEED_MORE}
+     * if more bytes have to be read to tell.
+     */
+    private static int match(byte[] buf, int pos, int end, boolean eof) {
+        if (buf[pos] != '<') {
+            return NO_MATCH;
+        }
+
+        int m = startsWith(buf, pos, end, PRE_END);
+        if (m > 0) {
+            // Skip the whitespace between </PRE> and <P>.
+            int i = pos + PRE_END.length;
+            while (i < end && isWhitespace(buf[i])) {
+                i ++;
+            }
+            m = startsWith(buf, i, end, PARAGRAPH);
+            if (m > 0) {
+                return pos + PRE_END.length;
+            }
+        }
+        if (m == 0 && !eof) {
+            return NEED_MORE;
+        }
+
+        for (byte[] marker: MARKERS) {
+            m = startsWith(buf, pos, end, marker);
+            if (m > 0) {
+                return pos;
+            }
+            if (m == 0 && !eof) {
+                return NEED_MORE;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+    /**
+     * Returns a positive number if the specified marker starts at the
+     * specified position, a negative number if not, or {@code 0} if the
+     * buffer ends before that can be told.
+     */
+    private static int startsWith(byte[] buf, int pos, int end, byte[] marker) {
+        for (int i = 0; i < marker.length; i ++) {
+            if (pos + i >= end) {
+                return 0;
+            }
+            if (buf[pos + i] != marker[i]) {
+                return -1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Same with {@code \s} in {@link java.util.regex.Pattern}.
+     */
+    private static boolean isWhitespace(byte b) {
+        switch (b) {
+        case ' ': case '\t': case '\n': case 0x0B: case '\f': case '\r':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i ++) {
+            b[i] = (byte) s.charAt(i);
+        }
+        return b;
+    }
+
+    private HtmlInjector() {
+        // Unused
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+/**
+ * The image formats Graphviz can render the diagrams to.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+enum ImageFormat {
+    /**
+     * A bitmap with a client-side image map for the links.
+     */
+    PNG("png", true),
+    /**
+     * A vector image which carries the links itself.
+     */
+    SVG("svg", false);
+
+    private final String extension;
+    private final boolean imageMap;
+
+    private ImageFormat(String extension, boolean imageMap) {
+        this.extension = extension;
+        this.imageMap = imageMap;
+    }
+
+    /**
+     * Returns the file name extension, which is also the name of the
+     * Graphviz output format.
+     */
+    String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns {@code true} if the links have to be rendered into a separate
+     * image map.
+     */
+    boolean usesImageMap() {
+        return imageMap;
+    }
+}
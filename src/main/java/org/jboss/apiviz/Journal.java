@@ -0,0 +1,240 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the diagrams finished (or given up) during a run,
+ * kept in the output directory until the run completes.  Every diagram is
+ * committed with a single checksummed write, so a killed run loses at most
+ * the diagrams which were still in progress.  The log is synced to the
+ * disk every few seconds rather than after every write, so a crash of the
+ * whole machine loses the diagrams of the last few seconds as well.  A run started with {@value Constant#OPTION_RESUME} reads the
+ * log of the interrupted run, keeps the images it finished and skips the
+ * diagrams it failed to render.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class Journal {
+
+    static final String FILENAME = ".apiviz-journal";
+
+    private static final byte COMPLETED = 1;
+    private static final byte FAILED = 2;
+
+    /**
+     * How often the log is synced to the disk, in milliseconds.
+     */
+    private static final long SYNC_INTERVAL = 5000;
+
+    private final File file;
+    private final String graphvizVersion;
+
+    /**
+     * Key = diagram filename<br>
+     * Value = diagram completed by the interrupted run
+     */
+    private final Map<String, Manifest.Entry> completed = new HashMap<String, Manifest.Entry>();
+
+    /**
+     * Key = diagram filename<br>
+     * Value = fingerprint of the diagram the interrupted run failed to
+     *         generate
+     */
+    private final Map<String, String> failed = new HashMap<String, String>();
+
+    private FileOutputStream out;
+    private long lastSyncTime = System.currentTimeMillis();
+
+    Journal(File outputDirectory, String graphvizVersion, boolean resume) throws IOException {
+        file = new File(outputDirectory, FILENAME);
+        this.graphvizVersion = graphvizVersion;
+
+        if (!resume || !file.isFile()) {
+            out = new FileOutputStream(file);
+            return;
+        }
+
+        // Rewrite what was read so that the torn record the interrupted run
+        // might have left does not hide the records appended from now on.
+        load();
+        File tmpFile = File.createTempFile("apiviz-", ".tmp", outputDirectory);
+        try {
+            out = new FileOutputStream(tmpFile);
+            try {
+                for (Map.Entry<String, Manifest.Entry> e: completed.entrySet()) {
+                    write(COMPLETED, e.getKey(), e.getValue(), null);
+                }
+                for (Map.Entry<String, String> e: failed.entrySet()) {
+                    write(FAILED, e.getKey(), null, e.getValue());
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file) && !FileUtil.moveFile(tmpFile, file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+        out = new FileOutputStream(file, true);
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(FileUtil.readBytes(file)));
+        CRC32 crc = new CRC32();
+        try {
+            for (;;) {
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if (in.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+
+                DataInputStream r = new DataInputStream(new ByteArrayInputStream(record));
+                byte type = r.readByte();
+                String filename = r.readUTF();
+                if (type == COMPLETED) {
+                    completed.put(filename, new Manifest.Entry(r));
+                    failed.remove(filename);
+                } else if (type == FAILED) {
+                    failed.put(filename, r.readUTF());
+                    completed.remove(filename);
+                }
+            }
+        } catch (EOFException e) {
+            // End of the log, or a record torn by the crash.
+        }
+    }
+
+    /**
+     * Keeps the image the interrupted run finished for the specified
+     * diagram, if it is still up to date.
+     *
+     * @return {@code true} if and only if the image can be kept
+     */
+    boolean reuse(Diagram diagram) {
+        Manifest.Entry e;
+        synchronized (this) {
+            e = completed.get(diagram.getFilename());
+        }
+        return e != null && e.reuse(diagram, graphvizVersion);
+    }
+
+    /**
+     * Returns {@code true} if and only if the interrupted run failed to
+     * generate the specified diagram as it is now.
+     */
+    boolean hasFailed(Diagram diagram) {
+        String fingerprint;
+        synchronized (this) {
+            fingerprint = failed.get(diagram.getFilename());
+        }
+        return fingerprint != null &&
+               fingerprint.equals(diagram.getFingerprint(graphvizVersion));
+    }
+
+    /**
+     * Commits the specified diagram, which has been inserted into its page.
+     */
+    void completed(Diagram diagram) throws IOException {
+        write(COMPLETED, diagram.getFilename(), new Manifest.Entry(diagram, graphvizVersion), null);
+    }
+
+    /**
+     * Commits the failure to generate the specified diagram.
+     */
+    void failed(Diagram diagram) throws IOException {
+        write(FAILED, diagram.getFilename(), null, diagram.getFingerprint(graphvizVersion));
+    }
+
+    private void write(
+            byte type, String filename,
+            Manifest.Entry entry, String fingerprint) throws IOException {
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(buf);
+        record.writeByte(type);
+        record.writeUTF(filename);
+        if (entry != null) {
+            entry.write(record);
+        } else {
+            record.writeUTF(fingerprint);
+        }
+        byte[] content = buf.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        buf = new ByteArrayOutputStream(content.length + 8);
+        record = new DataOutputStream(buf);
+        record.writeInt(content.length);
+        record.write(content);
+        record.writeInt((int) crc.getValue());
+
+        synchronized (this) {
+            out.write(buf.toByteArray());
+            long now = System.currentTimeMillis();
+            if (now - lastSyncTime >= SYNC_INTERVAL) {
+                out.getFD().sync();
+                lastSyncTime = now;
+            }
+        }
+    }
+
+    /**
+     * Closes the journal, removing it if the run is complete.
+     */
+    synchronized void close(boolean complete) throws IOException {
+        try {
+            if (!complete) {
+                out.getFD().sync();
+            }
+        } finally {
+            out.close();
+        }
+        if (complete) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How much effort Graphviz puts into laying out a diagram.  A diagram
+ * which takes longer than {@value Constant#OPTION_RENDER_TIMEOUT} is laid
+ * out again with the next cheaper quality, which keeps the settings of the
+ * ones before it.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+enum LayoutQuality {
+    /**
+     * The settings the diagram was generated with.
+     */
+    BEST("the generated settings", null),
+    /**
+     * Far fewer crossing minimization passes.
+     */
+    FEWER_PASSES("fewer crossing minimization passes", null, "mclimit=1", "searchsize=30"),
+    /**
+     * No second crossing minimization pass over the whole graph.
+     */
+    NO_REMINCROSS("no final crossing minimization", null, "remincross=false"),
+    /**
+     * Straight edges instead of polylines routed around the nodes.
+     */
+    STRAIGHT_EDGES("straight edges", null, "splines=line"),
+    /**
+     * A spring model layout, which does not rank the nodes at all.
+     */
+    SIMPLE_ENGINE("the neato engine", "neato", "overlap=scale");
+
+    private static final Pattern GRAPH_ATTRIBUTE = Pattern.compile("^([a-z]+)=[^;\\[]*;$");
+
+    private final String description;
+    private final String engine;
+    private final String[] attributes;
+
+    private LayoutQuality(String description, String engine, String... attributes) {
+        this.description = description;
+        this.engine = engine;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns a short description, e.g. {@code "straight edges"}.
+     */
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the Graphviz layout engine to use instead of {@code dot}, or
+     * {@code null}.
+     */
+    String getEngine() {
+        String engine = null;
+        for (LayoutQuality q: values()) {
+            if (q.engine != null) {
+                engine = q.engine;
+            }
+            if (q == this) {
+                break;
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the specified Graphviz source with its graph attributes
+     * replaced by the ones of this quality and those before it.
+     */
+    String apply(String source) {
+        if (this == BEST) {
+            return source;
+        }
+
+        Map<String, String> overrides = new LinkedHashMap<String, String>();
+        for (LayoutQuality q: values()) {
+            for (String a: q.attributes) {
+                overrides.put(a.substring(0, a.indexOf('=')), a);
+            }
+            if (q == this) {
+                break;
+            }
+        }
+
+        StringBuilder buf = new StringBuilder(source.length() + 64);
+        int headerEnd = -1;
+        int start = 0;
+        while (start < source.length()) {
+            int end = source.indexOf('\n', start);
+            int next = end < 0? source.length() : end + 1;
+            int contentEnd = end < 0? source.length() : end;
+            if (contentEnd > start && source.charAt(contentEnd - 1) == '\r') {
+                contentEnd --;
+            }
+
+            Matcher m = GRAPH_ATTRIBUTE.matcher(source.substring(start, contentEnd));
+            if (m.matches() && overrides.containsKey(m.group(1))) {
+                buf.append(overrides.remove(m.group(1)));
+                buf.append(';');
+                buf.append(source, contentEnd, next);
+            } else {
+                buf.append(source, start, next);
+            }
+            if (headerEnd < 0) {
+                // Right after "digraph APIVIZ {"
+                headerEnd = buf.length();
+            }
+            start = next;
+        }
+
+        // The attributes the diagram did not set go into the header.
+        StringBuilder header = new StringBuilder();
+        for (String a: overrides.values()) {
+            header.append(a);
+            header.append(';');
+            header.append(Constant.NEWLINE);
+        }
+        buf.insert(Math.max(headerEnd, 0), header);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the fingerprint of every diagram rendered into an output
+ * directory, so that the next run can keep the images whose
+ * {@linkplain Diagram#getFingerprint(String) fingerprint} did not change
+ * instead of rendering them again.  The pages are still injected every time
+ * because the standard doclet regenerates them.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class Manifest {
+
+    static final String FILENAME = ".apiviz-manifest";
+
+    private static final int MAGIC = 0x41504D32; // "APM2"
+
+    private final File file;
+    private final String graphvizVersion;
+
+    /**
+     * Key = diagram filename<br>
+     * Value = entry recorded by the previous run
+     */
+    private final Map<String, Entry> oldEntries = new HashMap<String, Entry>();
+
+    /**
+     * Key = diagram filename<br>
+     * Value = entry recorded by this run
+     */
+    private final Map<String, Entry> newEntries = new TreeMap<String, Entry>();
+
+    Manifest(File outputDirectory, String graphvizVersion) {
+        file = new File(outputDirectory, FILENAME);
+        this.graphvizVersion = graphvizVersion;
+
+        try {
+            load();
+        } catch (IOException e) {
+            // Missing or corrupt; render everything.
+            oldEntries.clear();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            for (int i = in.readInt(); i > 0; i --) {
+                String filename = in.readUTF();
+                Entry e = new Entry(in);
+                oldEntries.put(filename, e);
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Keeps the image rendered by the previous run if the fingerprint of the
+     * specified diagram did not change and the image was not touched since
+     * then.  Its image map is restored into the diagram.
+     *
+     * @return {@code true} if and only if the previous image was kept
+     */
+    boolean reuse(Diagram diagram) {
+        Entry e;
+        synchronized (this) {
+            e = oldEntries.get(diagram.getFilename());
+        }
+        if (e == null || !e.reuse(diagram, graphvizVersion)) {
+            return false;
+        }
+
+        synchronized (this) {
+            newEntries.put(diagram.getFilename(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Records the specified diagram, which was just rendered.
+     */
+    void put(Diagram diagram) {
+        Entry e = new Entry(diagram, graphvizVersion);
+        synchronized (this) {
+            newEntries.put(diagram.getFilename(), e);
+        }
+    }
+
+    /**
+     * Replaces the manifest of the previous run with the diagrams recorded
+     * by this run.
+     */
+    synchronized void save() throws IOException {
+        File tmpFile = File.createTempFile("apiviz-", ".tmp", file.getParentFile());
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(newEntries.size());
+                for (Map.Entry<String, Entry> e: newEntries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    e.getValue().write(out);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tmpFile.renameTo(file) && !FileUtil.moveFile(tmpFile, file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * A rendered diagram: its fingerprint, the size and the last modified
+     * time of its image, its image map, and the quality it was laid out
+     * with.
+     */
+    static final class Entry {
+        private final String fingerprint;
+        private final long imageLength;
+        private final long imageModified;
+        private final String map;
+        private final LayoutQuality quality;
+
+        Entry(Diagram diagram, String graphvizVersion) {
+            File image = diagram.getImageFile();
+            fingerprint = diagram.getFingerprint(graphvizVersion);
+            imageLength = image.length();
+            imageModified = image.lastModified();
+            map = diagram.getMap();
+            quality = diagram.getQuality();
+        }
+
+        Entry(DataInputStream in) throws IOException {
+            fingerprint = in.readUTF();
+            imageLength = in.readLong();
+            imageModified = in.readLong();
+            int mapLength = in.readInt();
+            if (mapLength < 0) {
+                map = null;
+            } else {
+                byte[] buf = new byte[mapLength];
+                in.readFully(buf);
+                map = new String(buf, "ISO-8859-1");
+            }
+            int ordinal = in.readByte();
+            if (ordinal < 0 || ordinal >= LayoutQuality.values().length) {
+                throw new IOException("unknown layout quality: " + ordinal);
+            }
+            quality = LayoutQuality.values()[ordinal];
+        }
+
+        String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Restores the image map of the specified diagram if it has the
+         * same fingerprint and its image was not touched since it was
+         * recorded.
+         *
+         * @return {@code true} if and only if the image can be kept
+         */
+        boolean reuse(Diagram diagram, String graphvizVersion) {
+            if (!fingerprint.equals(diagram.getFingerprint(graphvizVersion))) {
+                return false;
+            }
+
+            File image = diagram.getImageFile();
+            if (image.length() != imageLength || image.lastModified() != imageModified ||
+                diagram.getFormat().usesImageMap() && map == null) {
+                return false;
+            }
+
+            diagram.setMap(map);
+            diagram.setQuality(quality);
+            return true;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(fingerprint);
+            out.writeLong(imageLength);
+            out.writeLong(imageModified);
+            if (map == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] buf = map.getBytes("ISO-8859-1");
+                out.writeInt(buf.length);
+                out.write(buf);
+            }
+            out.writeByte(quality.ordinal());
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Limits how much memory the Graphviz processes use at the same time.  A
+ * dense package summary can make {@code dot} use gigabytes, and a few of
+ * them at once are enough to get a container killed.  A job is started
+ * only if its estimated memory fits into what is left of the budget,
+ * which is the larger of the estimates of the running jobs and the
+ * resident size of the child processes of this JVM, so that the estimates
+ * which turn out to be too low are corrected while Graphviz runs.  A job
+ * which does not fit lets the smaller jobs behind it start first.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class MemoryBudget {
+
+    /**
+     * How often the resident size of the child processes is read while a
+     * job is waiting, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    // A rough guess of what dot needs: the process itself, the nodes and
+    // the edges, and the rank orderings it keeps around while minimizing
+    // the crossings.
+    private static final long PROCESS_MEMORY = 16 * 1048576;
+    private static final long NODE_MEMORY = 8 * 1024;
+    private static final long EDGE_MEMORY = 8 * 1024;
+    private static final long CROSSING_MEMORY = 2 * 1024;
+
+    private static final int UNKNOWN_PID = -1;
+    private static int pid;
+
+    private final long budget;
+    private final int maxJobs;
+    private long reservedMemory;
+    private int runningJobs;
+    private long residentMemory = -1;
+    private long residentMemoryTime;
+
+    /**
+     * @param budget   the memory the jobs may use at the same time in
+     *                 bytes, or {@link Long#MAX_VALUE} for no limit
+     * @param maxJobs  the maximum number of jobs which run at the same time
+     */
+    MemoryBudget(long budget, int maxJobs) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget: " + budget);
+        }
+        if (maxJobs <= 0) {
+            throw new IllegalArgumentException("maxJobs: " + maxJobs);
+        }
+        this.budget = budget;
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * Returns the estimated memory {@code dot} needs to lay out a diagram of
+     * the specified size, in bytes.
+     */
+    static long estimate(CostModel.Size size) {
+        return PROCESS_MEMORY +
+               size.getNodes() * NODE_MEMORY +
+               size.getEdges() * EDGE_MEMORY +
+               size.getCrossings() * CROSSING_MEMORY;
+    }
+
+    /**
+     * Removes the first of the specified jobs which fits into the budget
+     * from the list, waiting a little while if none does.  A job always
+     * fits if nothing else is running, even if it needs more than the whole
+     * budget.
+     *
+     * @return the job to start, or {@code null} if none fits yet
+     */
+    synchronized <T extends Job> T acquire(List<T> pendingJobs) {
+        T job = poll(pendingJobs);
+        if (job == null) {
+            try {
+                wait(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                // Ignore; the caller tries again.
+            }
+            job = poll(pendingJobs);
+        }
+        return job;
+    }
+
+    private <T extends Job> T poll(List<T> pendingJobs) {
+        if (runningJobs >= maxJobs) {
+            return null;
+        }
+
+        for (Iterator<T> i = pendingJobs.iterator(); i.hasNext();) {
+            T job = i.next();
+            if (fits(job.getMemory())) {
+                i.remove();
+                reservedMemory += job.getMemory();
+                runningJobs ++;
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the memory of the specified job, which is finished, to the
+     * budget.
+     */
+    synchronized void release(Job job) {
+        reservedMemory -= job.getMemory();
+        runningJobs --;
+        notifyAll();
+    }
+
+    private boolean fits(long memory) {
+        if (runningJobs == 0) {
+            return true;
+        }
+        if (budget == Long.MAX_VALUE) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - residentMemoryTime >= POLL_INTERVAL) {
+            residentMemory = getChildrenResidentMemory();
+            residentMemoryTime = now;
+        }
+        return Math.max(reservedMemory, residentMemory) + memory <= budget;
+    }
+
+    /**
+     * Returns the total resident size of the child processes of this JVM in
+     * bytes, or {@code -1} if it is not known (i.e. not on Linux).
+     */
+    static long getChildrenResidentMemory() {
+        int pid = getPid();
+        if (pid == UNKNOWN_PID) {
+            return -1;
+        }
+
+        File[] processes = new File("/proc").listFiles();
+        if (processes == null) {
+            return -1;
+        }
+
+        long total = 0;
+        for (File p: processes) {
+            String name = p.getName();
+            if (name.length() == 0 || !Character.isDigit(name.charAt(0))) {
+                continue;
+            }
+
+            // Gone or not ours to read; either way not our child.
+            long[] status = readStatus(new File(p, "status"));
+            if (status != null && status[0] == pid) {
+                total += status[1];
+            }
+        }
+        return total;
+    }
+
+    private static synchronized int getPid() {
+        if (pid == 0) {
+            try {
+                pid = Integer.parseInt(new File("/proc/self").getCanonicalFile().getName());
+            } catch (Exception e) {
+                pid = UNKNOWN_PID;
+            }
+        }
+        return pid;
+    }
+
+    /**
+     * Returns the parent process ID and the resident size in bytes from the
+     * specified {@code /proc/<pid>/status} file, or {@code null} if it
+     * cannot be read.
+     */
+    private static long[] readStatus(File file) {
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new FileReader(file));
+            long parent = -1;
+            long resident = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("PPid:")) {
+                    parent = Long.parseLong(line.substring(5).trim());
+                } else if (line.startsWith("VmRSS:")) {
+                    // e.g. "VmRSS:     1234 kB"
+                    String value = line.substring(6).trim();
+                    int end = value.indexOf(' ');
+                    if (end > 0) {
+                        value = value.substring(0, end);
+                    }
+                    resident = Long.parseLong(value) * 1024;
+                    break;
+                }
+            }
+            return new long[] { parent, resident };
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns three quarters of the memory available to this JVM and its
+     * child processes, less the maximum heap size of this JVM, in bytes.
+     * The available memory is the memory limit of the Linux control group
+     * (i.e. the container) we are running in, or the physical memory.
+     * Returns {@link Long#MAX_VALUE} if neither is known.
+     */
+    static long getDefaultBudget() {
+        long limit = getMemoryLimit();
+        if (limit <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        long heap = Runtime.getRuntime().maxMemory();
+        long available = heap < limit? limit - heap : limit / 4;
+        return Math.max(1, available / 4 * 3);
+    }
+
+    private static long getMemoryLimit() {
+        // cgroup v2: "<bytes>" or "max"
+        long limit = parseLimit(Stage.readFirstLine(new File("/sys/fs/cgroup/memory.max")));
+        if (limit <= 0) {
+            // cgroup v1; an unlimited group reports a huge number.
+            limit = parseLimit(Stage.readFirstLine(new File("/sys/fs/cgroup/memory/memory.limit_in_bytes")));
+            if (limit >= 1L << 60) {
+                limit = -1;
+            }
+        }
+
+        long physical = getPhysicalMemory();
+        if (limit <= 0 || physical > 0 && physical < limit) {
+            limit = physical;
+        }
+        return limit;
+    }
+
+    private static long parseLimit(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long getPhysicalMemory() {
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new FileReader("/proc/meminfo"));
+            String line;
+            while ((line = in.readLine()) != null) {
+                // e.g. "MemTotal:       16318412 kB"
+                if (line.startsWith("MemTotal:")) {
+                    String[] fields = line.substring(9).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            return -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+    }
+
+    /**
+     * A job which needs a known amount of memory.
+     */
+    interface Job {
+        long getMemory();
+    }
+}
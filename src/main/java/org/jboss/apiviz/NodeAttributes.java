@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import com.sun.javadoc.Doc;
+import com.sun.javadoc.Tag;
+
+/**
+ * The APIviz tags of a class or a package, read with a single pass over
+ * its {@link Doc#tags()} so that the rendering and filtering paths do not
+ * have to look them up again.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class NodeAttributes {
+
+    private final String category;
+    private final String stereotype;
+    private final boolean landmark;
+    private final boolean hidden;
+    private final boolean deprecated;
+    private final boolean inherit;
+    private final boolean excludeSubtypes;
+
+    NodeAttributes(Doc node) {
+        String category = null;
+        String stereotype = null;
+        boolean landmark = false;
+        boolean hidden = false;
+        boolean deprecated = false;
+        boolean inherit = false;
+        boolean excludeSubtypes = false;
+
+        Tag[] tags = node.tags();
+        if (tags != null) {
+            for (Tag t: tags) {
+                String kind = t.kind();
+                if (kind.equals(TAG_CATEGORY)) {
+                    if (category == null) {
+                        category = t.text();
+                    }
+                } else if (kind.equals(TAG_STEREOTYPE)) {
+                    if (stereotype == null) {
+                        stereotype = t.text();
+                    }
+                } else if (kind.equals(TAG_LANDMARK)) {
+                    landmark = true;
+                } else if (kind.equals(TAG_HIDDEN)) {
+                    hidden = true;
+                } else if (kind.equals(TAG_EXCLUDE)) {
+                    // An empty exclusion rule hides the node itself.
+                    if (t.text() == null || t.text().trim().length() == 0) {
+                        hidden = true;
+                    }
+                } else if (kind.equals("@deprecated")) {
+                    deprecated = true;
+                } else if (kind.equals(TAG_INHERIT)) {
+                    inherit = true;
+                } else if (kind.equals(TAG_EXCLUDE_SUBTYPES)) {
+                    excludeSubtypes = true;
+                }
+            }
+        }
+
+        this.category = category;
+        this.stereotype = stereotype;
+        this.landmark = landmark;
+        this.hidden = hidden;
+        this.deprecated = deprecated;
+        this.inherit = inherit;
+        this.excludeSubtypes = excludeSubtypes;
+    }
+
+    /**
+     * Returns the first {@value Constant#TAG_CATEGORY}, or {@code null}.
+     */
+    String getCategory() {
+        return category;
+    }
+
+    /**
+     * Returns the first {@value Constant#TAG_STEREOTYPE}, or {@code null}.
+     */
+    String getStereotype() {
+        return stereotype;
+    }
+
+    boolean isLandmark() {
+        return landmark;
+    }
+
+    boolean isHidden() {
+        return hidden;
+    }
+
+    boolean isDeprecated() {
+        return deprecated;
+    }
+
+    boolean isInherit() {
+        return inherit;
+    }
+
+    boolean isExcludeSubtypes() {
+        return excludeSubtypes;
+    }
+}
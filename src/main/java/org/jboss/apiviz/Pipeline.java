@@ -0,0 +1,529 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.javadoc.RootDoc;
+
+/**
+ * Turns the generated diagram sources into images embedded in the HTML
+ * pages.  The {@link Scheduler} hands the diagrams over to the rendering
+ * stage, which generates their DOT sources and starts Graphviz without
+ * waiting for it.  The {@link ProcessPoller} hands each finished process
+ * over to the completion stage, which picks up the images and hands them
+ * over to the injection stage, which rewrites the HTML pages.
+ * Each stage has its own threads and a bounded queue, so that the CPU,
+ * Graphviz and the disk are kept busy at the same time without buffering
+ * every diagram, and no thread is held while Graphviz runs.
+ * A diagram which fails to render or to be inserted is reported and
+ * skipped rather than failing the whole run, and a diagram which takes
+ * too long to render is laid out again with cheaper settings.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class Pipeline {
+
+    /**
+     * The number of threads which pick up the images of the finished
+     * Graphviz processes.  They mostly move files around.
+     */
+    private static final int COMPLETION_THREADS = 2;
+
+    /**
+     * How long {@link #await()} waits before checking whether a stage
+     * failed, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final RootDoc root;
+    private final Journal journal;
+    private final Manifest manifest;
+    private final RenderCache cache;
+    private final CostModel costs;
+    private final long renderTimeout;
+    private final Stage renderStage;
+    private final Stage completionStage;
+    private final Stage injectStage;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final List<Diagram> degradedDiagrams = new ArrayList<Diagram>();
+    private int activeRenderings;
+
+    /**
+     * @param renderTimeout  the time a Graphviz process may take in
+     *                       milliseconds before the diagram is laid out
+     *                       with cheaper settings, or {@code 0} for no
+     *                       limit
+     */
+    Pipeline(RootDoc root, Journal journal, Manifest manifest, RenderCache cache, CostModel costs,
+             int renderThreads, long renderTimeout, int injectThreads) {
+        this.root = root;
+        this.journal = journal;
+        this.manifest = manifest;
+        this.cache = cache;
+        this.costs = costs;
+        this.renderTimeout = renderTimeout;
+        // A rendering task holds a batch of diagram sources, while an
+        // injection task only holds the file names.
+        renderStage = new Stage("render", renderThreads, renderThreads * 2);
+        // The completion tasks are submitted by the polling thread, which
+        // must never wait.  There are no more of them than there are
+        // Graphviz processes, which the memory budget limits anyway.
+        completionStage = new Stage("complete", COMPLETION_THREADS, Integer.MAX_VALUE);
+        if (injectThreads > 0) {
+            injectStage = new Stage("inject", injectThreads, injectThreads * 32);
+        } else {
+            // There are no pages; the images are all we need.
+            injectStage = null;
+        }
+    }
+
+    int getRenderThreads() {
+        return renderStage.getThreads();
+    }
+
+    /**
+     * Returns the number of diagrams which were not generated.
+     */
+    int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the diagrams which were laid out with less than the best
+     * quality, in this run or in the run which rendered the images that
+     * were kept, ordered by their filenames.
+     */
+    List<Diagram> getDegradedDiagrams() {
+        List<Diagram> diagrams;
+        synchronized (degradedDiagrams) {
+            diagrams = new ArrayList<Diagram>(degradedDiagrams);
+        }
+        Collections.sort(diagrams, new Comparator<Diagram>() {
+            public int compare(Diagram a, Diagram b) {
+                return a.getFilename().compareTo(b.getFilename());
+            }
+        });
+        return diagrams;
+    }
+
+    /**
+     * Generates the diagrams on a rendering thread, and then renders them
+     * and inserts them into their HTML pages.  Blocks while the rendering
+     * stage is full, but not while Graphviz runs.
+     *
+     * @param callback  run once the diagrams are rendered or failed to be,
+     *                  usually on a completion thread
+     */
+    void submit(final Callable<List<Diagram>> generator, final Runnable callback) throws IOException {
+        renderStage.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                new Rendering(callback).start(generator);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Waits until all diagrams went through every stage and rethrows the
+     * first unexpected failure, if any.
+     */
+    void await() throws IOException {
+        // Every rendering is started by a rendering task, and every
+        // completion and injection task is submitted while a rendering is
+        // active.
+        renderStage.join();
+        synchronized (this) {
+            // A failed stage skips its remaining tasks, so some renderings
+            // never finish.
+            while (activeRenderings > 0 && !hasFailed()) {
+                try {
+                    wait(POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    // Ignore.
+                }
+            }
+        }
+        completionStage.join();
+        if (injectStage != null) {
+            injectStage.join();
+        }
+        rethrowFailure();
+    }
+
+    private boolean hasFailed() {
+        return renderStage.hasFailed() || completionStage.hasFailed() ||
+               injectStage != null && injectStage.hasFailed();
+    }
+
+    /**
+     * Rethrows the first unexpected failure, if any.
+     */
+    void rethrowFailure() throws IOException {
+        renderStage.rethrowFailure();
+        completionStage.rethrowFailure();
+        if (injectStage != null) {
+            injectStage.rethrowFailure();
+        }
+    }
+
+    /**
+     * Renders a batch of diagrams.  Each step starts a Graphviz process and
+     * returns; the completion stage runs the next step once the process is
+     * done.
+     */
+    private final class Rendering {
+
+        private final Runnable callback;
+        private final List<Diagram> diagramsToRender = new ArrayList<Diagram>();
+        private List<Diagram> failedDiagrams;
+        private int nextFailedDiagram;
+        private boolean finished;
+
+        Rendering(Runnable callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Generates the diagrams, and starts rendering those which are
+         * neither kept nor cached.
+         */
+        void start(Callable<List<Diagram>> generator) throws Exception {
+            synchronized (Pipeline.this) {
+                activeRenderings ++;
+            }
+
+            boolean started = false;
+            try {
+                for (Diagram d: generator.call()) {
+                    if (journal != null && journal.hasFailed(d)) {
+                        root.printWarning(
+                                "Skipping " + d.getImageFile() +
+                                ", which failed in the interrupted run.");
+                        fail(d);
+                    } else if (journal != null && journal.reuse(d) ||
+                               manifest != null && manifest.reuse(d)) {
+                        root.printNotice("Keeping " + d.getImageFile() + "...");
+                        record(d);
+                        inject(d);
+                    } else if (cache != null && cache.get(d)) {
+                        root.printNotice("Reusing " + d.getImageFile() + "...");
+                        record(d);
+                        inject(d);
+                    } else {
+                        root.printNotice("Generating " + d.getImageFile() + "...");
+                        diagramsToRender.add(d);
+                    }
+                }
+
+                if (diagramsToRender.size() <= 1) {
+                    renderEach(diagramsToRender);
+                } else {
+                    renderAll();
+                }
+                started = true;
+            } finally {
+                if (!started) {
+                    finish();
+                }
+            }
+        }
+
+        /**
+         * Starts rendering all diagrams with a single Graphviz process.
+         */
+        private void renderAll() throws IOException {
+            final long startTime = System.nanoTime();
+            try {
+                Graphviz.writeImages(root, diagramsToRender, renderTimeout, completionStage,
+                        new Graphviz.Callback<List<Diagram>>() {
+                    public void completed(List<Diagram> failedDiagrams) throws Exception {
+                        boolean handedOver = false;
+                        try {
+                            if (failedDiagrams.isEmpty()) {
+                                recordCost(diagramsToRender, startTime);
+                            }
+                            for (Diagram d: diagramsToRender) {
+                                if (!failedDiagrams.contains(d)) {
+                                    cacheAndInject(d);
+                                }
+                            }
+                            renderEach(failedDiagrams);
+                            handedOver = true;
+                        } finally {
+                            if (!handedOver) {
+                                finish();
+                            }
+                        }
+                    }
+
+                    public void failed(Exception cause) throws Exception {
+                        boolean handedOver = false;
+                        try {
+                            renderEach(diagramsToRender);
+                            handedOver = true;
+                        } finally {
+                            if (!handedOver) {
+                                finish();
+                            }
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                renderEach(diagramsToRender);
+            }
+        }
+
+        /**
+         * Renders the specified diagrams one by one so that a broken
+         * diagram does not take the others down with it.
+         */
+        private void renderEach(List<Diagram> diagrams) throws IOException {
+            failedDiagrams = diagrams;
+            nextFailedDiagram = 0;
+            renderNext();
+        }
+
+        /**
+         * Starts rendering the next diagram, or finishes if none is left.
+         */
+        private void renderNext() throws IOException {
+            while (nextFailedDiagram < failedDiagrams.size()) {
+                if (writeImage(failedDiagrams.get(nextFailedDiagram ++), 0)) {
+                    return;
+                }
+            }
+            finish();
+        }
+
+        /**
+         * Starts rendering the specified diagram with the specified layout
+         * quality, and renders it again with the next cheaper one for as
+         * long as Graphviz runs out of time.
+         *
+         * @return {@code false} if the diagram failed to be rendered
+         *         without starting Graphviz
+         */
+        private boolean writeImage(final Diagram d, final int quality) throws IOException {
+            final LayoutQuality[] qualities = LayoutQuality.values();
+            final long startTime = System.nanoTime();
+            try {
+                Graphviz.writeImage(root, d, qualities[quality], renderTimeout, completionStage,
+                        new Graphviz.Callback<Object>() {
+                    public void completed(Object result) throws Exception {
+                        boolean handedOver = false;
+                        try {
+                            d.setQuality(qualities[quality]);
+                            if (qualities[quality] == LayoutQuality.BEST) {
+                                // The cost model estimates the generated
+                                // settings only.
+                                recordCost(Collections.singletonList(d), startTime);
+                            }
+                            cacheAndInject(d);
+                            renderNext();
+                            handedOver = true;
+                        } finally {
+                            if (!handedOver) {
+                                finish();
+                            }
+                        }
+                    }
+
+                    public void failed(Exception cause) throws Exception {
+                        boolean handedOver = false;
+                        try {
+                            if (!retry(d, quality, cause)) {
+                                renderNext();
+                            }
+                            handedOver = true;
+                        } finally {
+                            if (!handedOver) {
+                                finish();
+                            }
+                        }
+                    }
+                });
+                return true;
+            } catch (Exception e) {
+                return retry(d, quality, e);
+            }
+        }
+
+        /**
+         * Starts rendering the specified diagram again with the next
+         * cheaper layout quality if Graphviz ran out of time, or reports
+         * the failure.
+         *
+         * @return {@code false} if the diagram failed to be rendered
+         */
+        private boolean retry(Diagram d, int quality, Exception cause) throws IOException {
+            LayoutQuality[] qualities = LayoutQuality.values();
+            if (cause instanceof ProcessPoller.TimeoutException &&
+                quality + 1 < qualities.length) {
+                root.printWarning(
+                        "Laying out " + d.getImageFile() + " again with " +
+                        qualities[quality + 1].getDescription() + ": " + cause.getMessage());
+                return writeImage(d, quality + 1);
+            }
+
+            d.getImageFile().delete();
+            root.printWarning(
+                    "Failed to generate " + d.getImageFile() + ": " + cause);
+            fail(d);
+            return false;
+        }
+
+        /**
+         * Runs the callback once all diagrams are rendered or failed to be,
+         * or something unexpected went wrong.
+         */
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                callback.run();
+            } finally {
+                synchronized (Pipeline.this) {
+                    activeRenderings --;
+                    Pipeline.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the time a Graphviz process took to render the specified
+     * diagrams, so that the next run can estimate the cost of a diagram
+     * more accurately.
+     */
+    private void recordCost(List<Diagram> diagrams, long startTime) {
+        if (costs == null) {
+            return;
+        }
+
+        long elapsedTime = System.nanoTime() - startTime;
+        CostModel.Size size = CostModel.Size.EMPTY;
+        for (Diagram d: diagrams) {
+            CostModel.Size diagramSize = d.getSize();
+            if (diagramSize == null) {
+                diagramSize = CostModel.measure(d.getSource());
+            }
+            size = size.plus(diagramSize);
+        }
+        costs.record(size, elapsedTime);
+    }
+
+    private void cacheAndInject(Diagram diagram) throws IOException {
+        // The cache is keyed by the source only; a run with more time
+        // should not get the degraded image.
+        if (cache != null && diagram.getQuality() == LayoutQuality.BEST) {
+            try {
+                cache.put(diagram);
+            } catch (IOException e) {
+                // The cache is optional; the image is in place anyway.
+                root.printWarning(
+                        "Failed to cache " + diagram.getImageFile() + ": " + e);
+            }
+        }
+        record(diagram);
+        inject(diagram);
+    }
+
+    private void record(Diagram diagram) {
+        if (manifest != null) {
+            manifest.put(diagram);
+        }
+        if (diagram.getQuality() != LayoutQuality.BEST) {
+            synchronized (degradedDiagrams) {
+                degradedDiagrams.add(diagram);
+            }
+        }
+    }
+
+    private void inject(final Diagram diagram) throws IOException {
+        if (injectStage == null) {
+            if (journal != null) {
+                journal.completed(diagram);
+            }
+            return;
+        }
+
+        injectStage.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                try {
+                    insertDiagram(diagram);
+                } catch (Exception e) {
+                    root.printWarning(
+                            "Failed to insert " + diagram.getImageFile() +
+                            " into " + diagram.getHtmlFile() + ": " + e);
+                    fail(diagram);
+                    return null;
+                }
+                if (journal != null) {
+                    journal.completed(diagram);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void fail(Diagram diagram) throws IOException {
+        failures.incrementAndGet();
+        if (journal != null) {
+            journal.failed(diagram);
+        }
+    }
+
+    private static void insertDiagram(Diagram diagram) throws IOException {
+        String image;
+        if (diagram.getFormat().usesImageMap()) {
+            image = diagram.getMap() + NEWLINE +
+                    "<CENTER><IMG SRC=\"" + diagram.getImageFile().getName() +
+                    "\" USEMAP=\"#APIVIZ\" BORDER=\"0\"></CENTER>";
+        } else {
+            // An <IMG> would disable the links in the image.
+            image = "<CENTER><OBJECT DATA=\"" + diagram.getImageFile().getName() +
+                    "\" TYPE=\"image/svg+xml\"></OBJECT></CENTER>";
+        }
+
+        String content =
+            image +
+            NEWLINE +
+            (diagram.needsBottomMargin()? "<BR>" : "") +
+            NEWLINE;
+        HtmlInjector.inject(diagram.getHtmlFile(), content.getBytes("ISO-8859-1"));
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Copies the output of child processes and waits for them to exit, all on
+ * a single thread, so that the threads which start the processes neither
+ * need a thread per stream to keep the pipes from filling up nor have to
+ * wait for them; a {@link Listener} is told when a process is done.  The
+ * thread reads only what is {@linkplain InputStream#available() available}
+ * and polls the exit value instead of blocking on either.  A process which
+ * does not exit in time is destroyed.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class ProcessPoller {
+
+    /**
+     * The longest time the thread sleeps when there was nothing to do, in
+     * milliseconds.  It sleeps shorter while the processes are busy.
+     */
+    private static final long MAX_POLL_INTERVAL = 10;
+
+    private static final List<Execution> executions = new ArrayList<Execution>();
+    private static Thread thread;
+
+    /**
+     * Starts copying the standard output and error of the specified
+     * process, which must not expect any input, into the specified
+     * streams.  The streams are flushed once the process exits.
+     *
+     * @param timeout   the time the process may run in milliseconds, or
+     *                  {@code 0} for no limit
+     * @param listener  notified once the future is done, or {@code null}
+     * @return the exit value of the process.  The future fails with an
+     *         {@link IOException} if the output cannot be read, or with a
+     *         {@link TimeoutException} if the process does not exit in
+     *         time.
+     */
+    static Future<Integer> watch(Process process, OutputStream out, OutputStream err, long timeout, Listener listener) {
+        Execution e = new Execution(process, out, err, timeout, listener);
+        synchronized (executions) {
+            executions.add(e);
+            if (thread == null) {
+                thread = new Thread("apiviz-process-poller") {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+            executions.notifyAll();
+        }
+        return e;
+    }
+
+    private static void poll() {
+        List<Execution> snapshot = new ArrayList<Execution>();
+        long interval = 1;
+        for (;;) {
+            synchronized (executions) {
+                while (executions.isEmpty()) {
+                    try {
+                        executions.wait();
+                    } catch (InterruptedException e) {
+                        // Ignore.
+                    }
+                }
+                snapshot.addAll(executions);
+            }
+
+            boolean busy = false;
+            long now = System.currentTimeMillis();
+            for (Execution e: snapshot) {
+                busy |= e.poll(now);
+                if (e.isDone()) {
+                    synchronized (executions) {
+                        executions.remove(e);
+                    }
+                }
+            }
+            snapshot.clear();
+
+            if (busy) {
+                interval = 1;
+            } else {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    // Ignore.
+                }
+                interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+            }
+        }
+    }
+
+    private static final Callable<Integer> NOTHING = new Callable<Integer>() {
+        public Integer call() {
+            return null;
+        }
+    };
+
+    /**
+     * A running process.  It is never run as a task; the polling thread
+     * completes it.
+     */
+    private static final class Execution extends FutureTask<Integer> {
+
+        private final Process process;
+        private final InputStream in;
+        private final InputStream errIn;
+        private final OutputStream out;
+        private final OutputStream err;
+        private final long deadline;
+        private final long timeout;
+        private final Listener listener;
+        private final byte[] buf = new byte[8192];
+
+        Execution(Process process, OutputStream out, OutputStream err, long timeout, Listener listener) {
+            super(NOTHING);
+            this.process = process;
+            this.out = out;
+            this.err = err;
+            this.timeout = timeout;
+            this.listener = listener;
+            deadline = timeout > 0? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+            in = process.getInputStream();
+            errIn = process.getErrorStream();
+            try {
+                // Nothing to feed; the input comes from files.
+                process.getOutputStream().close();
+            } catch (IOException e) {
+                // The process is gone already.
+            }
+        }
+
+        /**
+         * Copies what is available and completes this future if the
+         * process exited or ran out of time.
+         *
+         * @return {@code true} if there was some output
+         */
+        boolean poll(long now) {
+            try {
+                boolean busy = copyAvailable(in, out) | copyAvailable(errIn, err);
+
+                int exitValue;
+                try {
+                    exitValue = process.exitValue();
+                } catch (IllegalThreadStateException e) {
+                    if (now >= deadline) {
+                        process.destroy();
+                        close();
+                        setException(new TimeoutException(timeout));
+                    }
+                    return busy;
+                }
+
+                // Nobody writes into the pipes anymore; read them to the end.
+                copyAll(in, out);
+                copyAll(errIn, err);
+                close();
+                out.flush();
+                err.flush();
+                set(exitValue);
+                return true;
+            } catch (Exception e) {
+                // Including what the output streams throw; the polling
+                // thread must go on.
+                process.destroy();
+                close();
+                setException(e);
+                return true;
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (listener == null) {
+                return;
+            }
+            try {
+                listener.done(this);
+            } catch (RuntimeException e) {
+                // The polling thread must go on.
+            }
+        }
+
+        private boolean copyAvailable(InputStream src, OutputStream dst) throws IOException {
+            boolean copied = false;
+            for (;;) {
+                int available = src.available();
+                if (available <= 0) {
+                    return copied;
+                }
+                int readBytes = src.read(buf, 0, Math.min(available, buf.length));
+                if (readBytes <= 0) {
+                    return copied;
+                }
+                dst.write(buf, 0, readBytes);
+                copied = true;
+            }
+        }
+
+        private void copyAll(InputStream src, OutputStream dst) throws IOException {
+            for (;;) {
+                int readBytes = src.read(buf);
+                if (readBytes < 0) {
+                    break;
+                }
+                dst.write(buf, 0, readBytes);
+            }
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+            try {
+                errIn.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Notified by the polling thread once a process exited, failed or ran
+     * out of time.  It must neither block nor throw; it should hand the
+     * result over to another thread.
+     */
+    interface Listener {
+        void done(Future<Integer> result);
+    }
+
+    /**
+     * Thrown when a process did not exit in time and was destroyed.
+     */
+    static final class TimeoutException extends IOException {
+
+        private static final long serialVersionUID = -4352541183064839618L;
+
+        TimeoutException(long timeout) {
+            super("Graphviz did not finish in " + timeout / 1000 + " second(s)");
+        }
+    }
+
+    private ProcessPoller() {
+        // Unused
+    }
+}
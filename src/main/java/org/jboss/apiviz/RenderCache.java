@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An on-disk cache of rendered diagrams.  An entry is keyed by the hash of
+ * the Graphviz source, the image format and the Graphviz version, and
+ * consists of the image and, if any, the image map.  A diagram whose source did
+ * not change since the last run does not need to be rendered again.  The
+ * least recently used entries are evicted when the cache grows larger than
+ * its capacity.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class RenderCache {
+
+    private static final String MAP_SUFFIX = ".map";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long capacity;
+    private final String graphvizVersion;
+
+    /**
+     * Key = entry key<br>
+     * Value = total size of the entry files, in access order
+     */
+    private final LinkedHashMap<String, Long> entries =
+        new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size;
+
+    RenderCache(File directory, long capacity, String graphvizVersion) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create a directory: " + directory);
+        }
+
+        this.directory = directory;
+        this.capacity = capacity;
+        this.graphvizVersion = graphvizVersion == null? "" : graphvizVersion;
+
+        load();
+    }
+
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Restore the access order from the last modified time.
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long v = a.lastModified() - b.lastModified();
+                return v < 0? -1 : v > 0? 1 : 0;
+            }
+        });
+
+        for (File f: files) {
+            String name = f.getName();
+            int dot = name.indexOf('.');
+            if (dot < 0 || name.endsWith(TMP_SUFFIX)) {
+                continue;
+            }
+
+            // An entry is as old as its most recently used file.
+            String key = name.substring(0, dot);
+            Long entrySize = entries.remove(key);
+            entries.put(key, (entrySize == null? 0 : entrySize.longValue()) + f.length());
+            size += f.length();
+        }
+
+        evict();
+    }
+
+    /**
+     * Copies the cached image of the specified diagram into place, and
+     * reads its cached image map into the diagram.
+     *
+     * @return {@code true} if and only if the diagram was found in the cache
+     */
+    boolean get(Diagram diagram) throws IOException {
+        String key = getKey(diagram);
+        File image = getImageFile(key, diagram);
+        File map = new File(directory, key + MAP_SUFFIX);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return false;
+            }
+
+            long now = System.currentTimeMillis();
+            image.setLastModified(now);
+            if (diagram.getFormat().usesImageMap()) {
+                map.setLastModified(now);
+            }
+        }
+
+        try {
+            if (diagram.getFormat().usesImageMap()) {
+                diagram.setMap(FileUtil.readFile(map));
+            }
+            FileUtil.copyFile(image, diagram.getImageFile());
+            return true;
+        } catch (IOException e) {
+            // Evicted by someone else?
+            return false;
+        }
+    }
+
+    /**
+     * Stores the rendered image and image map of the specified diagram.
+     */
+    void put(Diagram diagram) throws IOException {
+        String key = getKey(diagram);
+        File image = getImageFile(key, diagram);
+        File map = new File(directory, key + MAP_SUFFIX);
+
+        // Copy to temporary files first so that a reader never sees a
+        // partially written entry.
+        File tmpImage = File.createTempFile(key, TMP_SUFFIX, directory);
+        File tmpMap = null;
+        try {
+            FileUtil.copyFile(diagram.getImageFile(), tmpImage);
+            if (diagram.getMap() != null) {
+                tmpMap = File.createTempFile(key, TMP_SUFFIX, directory);
+                FileUtil.writeFile(tmpMap, diagram.getMap());
+            }
+
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    return;
+                }
+                if (!FileUtil.moveFile(tmpImage, image) ||
+                    tmpMap != null && !FileUtil.moveFile(tmpMap, map)) {
+                    image.delete();
+                    map.delete();
+                    return;
+                }
+
+                long entrySize = image.length() + (tmpMap != null? map.length() : 0);
+                entries.put(key, entrySize);
+                size += entrySize;
+                evict();
+            }
+        } finally {
+            tmpImage.delete();
+            if (tmpMap != null) {
+                tmpMap.delete();
+            }
+        }
+    }
+
+    private File getImageFile(String key, Diagram diagram) {
+        return new File(directory, key + '.' + diagram.getFormat().getExtension());
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> i = entries.entrySet().iterator();
+        while (size > capacity && i.hasNext()) {
+            Map.Entry<String, Long> e = i.next();
+            for (ImageFormat format: ImageFormat.values()) {
+                new File(directory, e.getKey() + '.' + format.getExtension()).delete();
+            }
+            new File(directory, e.getKey() + MAP_SUFFIX).delete();
+            size -= e.getValue().longValue();
+            i.remove();
+        }
+    }
+
+    private String getKey(Diagram diagram) {
+        return diagram.getFingerprint(graphvizVersion);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submits the diagrams to the {@link Pipeline} in the order of their
+ * estimated layout cost, the most expensive first.  A big package summary
+ * which happens to be submitted last would otherwise keep Graphviz busy
+ * long after every other diagram is done.  The cost is estimated by the
+ * {@link CostModel} from the {@link Source#getSize() size} of the
+ * subgraph a diagram is generated from, which is much cheaper than
+ * generating its source; the sources are generated by the rendering
+ * threads only.  The diagrams are measured in chunks on several threads,
+ * and the first chunk is submitted as soon as it is measured: the most
+ * expensive of the diagrams measured so far goes first, and the
+ * overview and the package summaries, which are added first, are
+ * measured first.  A diagram is started only when its Graphviz process
+ * fits into the {@link MemoryBudget}.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class Scheduler {
+
+    /**
+     * The number of diagrams measured by a single task.  Only the diagrams
+     * in the same chunk are batched together.
+     */
+    private static final int JOBS_PER_TASK = 256;
+
+    /**
+     * How long to wait for the next chunk to be measured before checking
+     * whether measuring failed, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final Pipeline pipeline;
+    private final CostModel model;
+    private final MemoryBudget budget;
+    private final File outputDirectory;
+    private final ImageFormat format;
+    private final int batchSize;
+    private final List<Job> jobs = new ArrayList<Job>();
+
+    /**
+     * @param batchSize  the number of diagrams which are rendered by a
+     *                   single Graphviz process if they are
+     *                   {@linkplain #add(String, Source, boolean) batchable}
+     */
+    Scheduler(Pipeline pipeline, CostModel model, MemoryBudget budget, File outputDirectory, ImageFormat format, int batchSize) {
+        this.pipeline = pipeline;
+        this.model = model;
+        this.budget = budget;
+        this.outputDirectory = outputDirectory;
+        this.format = format;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds a diagram to render.
+     *
+     * @param filename   the filename of the diagram, without an extension
+     * @param batchable  {@code true} if the diagram is usually small enough
+     *                   to be rendered along with others by a single
+     *                   Graphviz process
+     */
+    void add(String filename, Source source, boolean batchable) {
+        jobs.add(new Job(filename, source, batchable));
+    }
+
+    /**
+     * Measures the added diagrams and submits them to the pipeline, the
+     * most expensive first, as long as they fit into the memory budget.
+     * Blocks until the last one is submitted.
+     */
+    void submit() throws IOException {
+        int threads = pipeline.getRenderThreads();
+        int tasks = (jobs.size() + JOBS_PER_TASK - 1) / JOBS_PER_TASK;
+
+        // Every task is queued up front, so that submitting them does not
+        // wait for the diagrams to be submitted.
+        Stage measureStage = new Stage("measure", threads, Math.max(threads, tasks));
+        final BlockingQueue<List<Batch>> measuredBatches = new LinkedBlockingQueue<List<Batch>>();
+        try {
+            for (int i = 0; i < jobs.size(); i += JOBS_PER_TASK) {
+                final List<Job> jobsToMeasure = jobs.subList(i, Math.min(jobs.size(), i + JOBS_PER_TASK));
+                measureStage.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        measuredBatches.add(measure(jobsToMeasure));
+                        return null;
+                    }
+                });
+            }
+
+            List<Batch> pendingBatches = new ArrayList<Batch>();
+            int unmeasuredTasks = tasks;
+            while (unmeasuredTasks > 0 || !pendingBatches.isEmpty()) {
+                // Take what was measured in the meantime, and wait for it
+                // only if there is nothing else to submit.
+                List<List<Batch>> newBatches = new ArrayList<List<Batch>>();
+                if (pendingBatches.isEmpty()) {
+                    newBatches.add(takeMeasuredBatches(measureStage, measuredBatches));
+                }
+                measuredBatches.drainTo(newBatches);
+                if (!newBatches.isEmpty()) {
+                    for (List<Batch> batches: newBatches) {
+                        pendingBatches.addAll(batches);
+                    }
+                    unmeasuredTasks -= newBatches.size();
+                    sort(pendingBatches);
+                }
+
+                Batch b = budget.acquire(pendingBatches);
+                if (b == null) {
+                    // The jobs which were skipped because of a failure never
+                    // return their memory.
+                    pipeline.rethrowFailure();
+                    continue;
+                }
+                submit(b);
+            }
+        } finally {
+            measureStage.join();
+        }
+        jobs.clear();
+    }
+
+    private static List<Batch> takeMeasuredBatches(
+            Stage measureStage, BlockingQueue<List<Batch>> measuredBatches) throws IOException {
+        for (;;) {
+            // A task which failed, or was skipped after a failure, never
+            // hands over its batches.
+            measureStage.rethrowFailure();
+            try {
+                List<Batch> batches = measuredBatches.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (batches != null) {
+                    return batches;
+                }
+            } catch (InterruptedException e) {
+                // Ignore; try again.
+            }
+        }
+    }
+
+    /**
+     * Measures the specified diagrams and groups them into batches.
+     */
+    private List<Batch> measure(List<Job> jobsToMeasure) {
+        List<Job> sortedJobs = new ArrayList<Job>(jobsToMeasure.size());
+        for (Job j: jobsToMeasure) {
+            j.size = j.source.getSize();
+            j.cost = model.estimate(j.size);
+            sortedJobs.add(j);
+        }
+
+        // Sorting the diagrams before batching them keeps the big class
+        // diagrams together rather than spread over the batches.
+        sort(sortedJobs);
+        List<Batch> batches = new ArrayList<Batch>();
+        Batch batch = null;
+        for (Job j: sortedJobs) {
+            if (!j.batchable) {
+                batches.add(new Batch(j));
+                continue;
+            }
+            if (batch == null || batch.jobs.size() >= batchSize) {
+                batch = new Batch(j);
+                batches.add(batch);
+            } else {
+                batch.add(j);
+            }
+        }
+        return batches;
+    }
+
+    private void submit(final Batch b) throws IOException {
+        boolean submitted = false;
+        try {
+            pipeline.submit(new Callable<List<Diagram>>() {
+                public List<Diagram> call() throws Exception {
+                    List<Diagram> diagrams = new ArrayList<Diagram>(b.jobs.size());
+                    for (Job j: b.jobs) {
+                        StringBuilder buf = new StringBuilder(8192);
+                        j.source.write(buf);
+                        Diagram d = new Diagram(outputDirectory, j.filename, buf.toString(), format);
+                        d.setSize(j.size);
+                        diagrams.add(d);
+                    }
+                    return diagrams;
+                }
+            }, new Runnable() {
+                public void run() {
+                    budget.release(b);
+                }
+            });
+            submitted = true;
+        } finally {
+            if (!submitted) {
+                budget.release(b);
+            }
+        }
+    }
+
+    /**
+     * Sorts the specified tasks by their cost in descending order, keeping
+     * the order they were added in when they cost the same.
+     */
+    private static void sort(List<? extends Task> tasks) {
+        Collections.sort(tasks, new Comparator<Task>() {
+            public int compare(Task a, Task b) {
+                return Double.compare(b.cost, a.cost);
+            }
+        });
+    }
+
+    /**
+     * Generates a diagram.
+     */
+    interface Source {
+
+        /**
+         * Returns the size of the diagram without generating it.
+         */
+        CostModel.Size getSize();
+
+        /**
+         * Writes the Graphviz source of the diagram.
+         */
+        void write(Appendable out) throws IOException;
+    }
+
+    private static class Task {
+        double cost;
+    }
+
+    private static final class Job extends Task {
+        final String filename;
+        final Source source;
+        final boolean batchable;
+        CostModel.Size size;
+
+        Job(String filename, Source source, boolean batchable) {
+            this.filename = filename;
+            this.source = source;
+            this.batchable = batchable;
+        }
+    }
+
+    private final class Batch extends Task implements MemoryBudget.Job {
+        final List<Job> jobs = new ArrayList<Job>();
+        CostModel.Size size = CostModel.Size.EMPTY;
+        long memory;
+
+        Batch(Job job) {
+            add(job);
+        }
+
+        void add(Job job) {
+            jobs.add(job);
+            size = size.plus(job.size);
+            cost = model.estimate(size);
+            // Graphviz lays out one diagram after another.
+            memory = Math.max(memory, MemoryBudget.estimate(job.size));
+        }
+
+        public long getMemory() {
+            return memory;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stage of the diagram {@link Pipeline}: runs its tasks on a fixed number
+ * of threads and makes the submitter wait once too many tasks are queued,
+ * so that a slow stage holds back the stage before it instead of letting
+ * the pending work pile up in memory.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class Stage {
+
+    private final ExecutorService executor;
+    private final Semaphore pendingTasks;
+    private final int threads;
+    private volatile Throwable failure;
+
+    /**
+     * @param name      the name of the stage, used for the thread names
+     * @param threads   the number of threads; 1 runs the tasks in the
+     *                  submitter thread
+     * @param capacity  the maximum number of tasks that are queued or
+     *                  running at the same time
+     */
+    Stage(final String name, int threads, int capacity) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        if (capacity < threads) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+
+        this.threads = threads;
+        if (threads == 1) {
+            executor = null;
+            pendingTasks = null;
+        } else {
+            final AtomicInteger threadId = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "apiviz-" + name + "-" + threadId.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            pendingTasks = new Semaphore(capacity);
+        }
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    void submit(final Callable<?> task) throws IOException {
+        if (executor == null) {
+            try {
+                task.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+
+        rethrowFailure();
+        pendingTasks.acquireUninterruptibly();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (failure == null) {
+                        task.call();
+                    }
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                } finally {
+                    pendingTasks.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until all submitted tasks are finished and rethrows the first
+     * failure, if any.
+     */
+    void await() throws IOException {
+        join();
+        rethrowFailure();
+    }
+
+    /**
+     * Waits until all submitted tasks are finished.
+     */
+    void join() {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns {@code true} if a submitted task failed.  The tasks which
+     * were queued after it are skipped.
+     */
+    boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Rethrows the first failure of the submitted tasks, if any.
+     */
+    void rethrowFailure() throws IOException {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(t);
+    }
+
+    /**
+     * Returns the number of available processors, capped by the CPU quota of
+     * the Linux control group (i.e. the container) we are running in.
+     */
+    static int getDefaultThreads() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int quota = getCpuQuota();
+        if (quota > 0 && quota < cpus) {
+            cpus = quota;
+        }
+        return Math.max(1, cpus);
+    }
+
+    private static int getCpuQuota() {
+        // cgroup v2: "<quota> <period>" or "max <period>"
+        String line = readFirstLine(new File("/sys/fs/cgroup/cpu.max"));
+        if (line != null) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length == 2 && !fields[0].equals("max")) {
+                return divideRoundingUp(fields[0], fields[1]);
+            }
+            return -1;
+        }
+
+        // cgroup v1
+        String quota = readFirstLine(new File("/sys/fs/cgroup/cpu/cpu.cfs_quota_us"));
+        String period = readFirstLine(new File("/sys/fs/cgroup/cpu/cpu.cfs_period_us"));
+        if (quota != null && period != null) {
+            return divideRoundingUp(quota.trim(), period.trim());
+        }
+        return -1;
+    }
+
+    private static int divideRoundingUp(String dividend, String divisor) {
+        try {
+            long a = Long.parseLong(dividend);
+            long b = Long.parseLong(divisor);
+            if (a <= 0 || b <= 0) {
+                return -1;
+            }
+            return (int) ((a + b - 1) / b);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the first line of the specified file, or {@code null} if it
+     * cannot be read.
+     */
+    static String readFirstLine(File file) {
+        if (!file.canRead()) {
+            return null;
+        }
+
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new FileReader(file));
+            return in.readLine();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.RootDoc;
+
+/**
+ * Generates the diagrams straight from compiled classes, without running
+ * javadoc first.  The diagrams are written into the output directory with
+ * the same layout as in the generated documentation, e.g.
+ * {@code overview-summary.png}, {@code foo/bar/package-summary.png} and
+ * {@code foo/bar/Baz.png}.  As there are no doc comments, the APIviz tags
+ * are not available; the diagrams show the generalizations, realizations
+ * and package dependencies found in the class files.
+ * <p>
+ * The javadoc API ({@code tools.jar} before Java 9) has to be in the class
+ * path, but no javadoc pass is made.
+ *
+ * <pre>
+ * java org.jboss.apiviz.StandaloneAPIviz -d &lt;directory&gt; [options] &lt;class directory or jar&gt;...
+ * </pre>
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class StandaloneAPIviz {
+
+    public static void main(String[] args) throws Exception {
+        List<String[]> options = new ArrayList<String[]>();
+        List<File> classPath = new ArrayList<File>();
+        int access = ClassFileRootDoc.PROTECTED;
+        boolean hasSourceClassPath = false;
+        for (int i = 0; i < args.length; i ++) {
+            String a = args[i];
+            if (a.equals("-public")) {
+                access = ClassFileRootDoc.PUBLIC;
+            } else if (a.equals("-protected")) {
+                access = ClassFileRootDoc.PROTECTED;
+            } else if (a.equals("-package")) {
+                access = ClassFileRootDoc.PACKAGE;
+            } else if (a.equals("-private")) {
+                access = ClassFileRootDoc.PRIVATE;
+            } else if (a.startsWith("-")) {
+                int length = a.equals("-d")? 2 : APIviz.getOptionLength(a);
+                if (length <= 0 || i + length > args.length) {
+                    printUsage();
+                    System.exit(a.equals(OPTION_HELP)? 0 : 1);
+                }
+
+                String[] o = new String[length];
+                System.arraycopy(args, i, o, 0, length);
+                options.add(o);
+                i += length - 1;
+                if (a.equals(OPTION_SOURCE_CLASS_PATH)) {
+                    hasSourceClassPath = true;
+                }
+            } else {
+                for (String e: a.split(File.pathSeparator)) {
+                    if (e.length() > 0) {
+                        classPath.add(new File(e));
+                    }
+                }
+            }
+        }
+
+        if (classPath.isEmpty()) {
+            printUsage();
+            System.exit(1);
+        }
+
+        // The package dependencies come from the same classes.
+        if (!hasSourceClassPath) {
+            StringBuilder buf = new StringBuilder();
+            for (File f: classPath) {
+                if (buf.length() > 0) {
+                    buf.append(File.pathSeparatorChar);
+                }
+                buf.append(f.getPath());
+            }
+            options.add(new String[] { OPTION_SOURCE_CLASS_PATH, buf.toString() });
+        }
+
+        String[][] optionArray = options.toArray(new String[options.size()][]);
+        System.exit(generate(classPath.toArray(new File[classPath.size()]), optionArray, access)? 0 : 1);
+    }
+
+    /**
+     * Generates the diagrams of the classes in the specified class path.
+     *
+     * @param options  the options, as javadoc would pass them to
+     *                 {@link APIviz#start(RootDoc)}
+     * @param access   the lowest access level of the classes and the methods
+     *                 to include
+     * @return {@code true} if and only if the diagrams were generated
+     */
+    static boolean generate(File[] classPath, String[][] options, int access) throws Exception {
+        for (File f: classPath) {
+            if (!f.exists()) {
+                System.err.println("error - " + f + " doesn't exist.");
+                return false;
+            }
+        }
+
+        RootDoc root = ClassFileRootDoc.load(classPath, options, access);
+        if (!APIviz.checkOptions(options, root)) {
+            return false;
+        }
+
+        ClassDoc[] classes = root.classes();
+        if (classes.length == 0) {
+            root.printError("No classes found in the class path.");
+            return false;
+        }
+
+        File outputDirectory = APIviz.getOutputDirectory(options);
+        for (ClassDoc c: classes) {
+            String path = c.containingPackage().name().replace('.', File.separatorChar);
+            File dir = new File(outputDirectory, path);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                root.printError("Failed to create a directory: " + dir);
+                return false;
+            }
+        }
+
+        root.printNotice("Loaded " + classes.length + " classes.");
+        return APIviz.generateDiagrams(root, new HtmlIndex(outputDirectory, false), 0);
+    }
+
+    private static void printUsage() {
+        System.out.println(
+                "Usage: java " + StandaloneAPIviz.class.getName() +
+                " -d <directory> [options] <class directory or jar>...");
+        System.out.println();
+        System.out.println("-public                         Show only public classes");
+        System.out.println("-protected                      Show protected/public classes (default)");
+        System.out.println("-package                        Show package/protected/public classes");
+        System.out.println("-private                        Show all classes");
+        System.out.println("-d <directory>                  Destination directory for the diagrams");
+        APIviz.printOptions();
+    }
+
+    private StandaloneAPIviz() {
+        // Unused
+    }
+}
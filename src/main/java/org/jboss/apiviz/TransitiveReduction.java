@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.javadoc.Doc;
+
+/**
+ * Removes the edges which don't change the effective relationship of a graph
+ * because their target is also reachable via other edges.
+ * <p>
+ * The edges are visited in their iteration order, and an edge is removed if
+ * its target is still reachable from its source without it.  Because
+ * removing a redundant edge never changes reachability, it is enough to
+ * visit every edge once.  The strongly connected components are condensed
+ * first, so that the edges between components are decided with the bitset
+ * reachability of the condensed (acyclic) graph, and only the edges inside
+ * a cycle need to be checked one by one.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+class TransitiveReduction {
+
+    /**
+     * Removes the redundant edges from the specified set.
+     */
+    static void reduce(Set<Edge> edges) {
+        Map<Doc, Integer> ids = new HashMap<Doc, Integer>();
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        int i = 0;
+        for (Edge e: edges) {
+            sources[i] = getId(ids, e.getSource());
+            targets[i] = getId(ids, e.getTarget());
+            i ++;
+        }
+
+        BitSet redundantEdges = reduce(ids.size(), sources, targets);
+
+        i = 0;
+        for (Iterator<Edge> it = edges.iterator(); it.hasNext(); i ++) {
+            it.next();
+            if (redundantEdges.get(i)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static int getId(Map<Doc, Integer> ids, Doc node) {
+        Integer id = ids.get(node);
+        if (id == null) {
+            id = ids.size();
+            ids.put(node, id);
+        }
+        return id;
+    }
+
+    /**
+     * Finds the redundant edges of the specified graph.  The edge
+     * {@code i} goes from the node {@code sources[i]} to the node
+     * {@code targets[i]}, and there must be no duplicate edges.
+     *
+     * @return the indexes of the redundant edges
+     */
+    static BitSet reduce(int nodeCount, int[] sources, int[] targets) {
+        int edgeCount = sources.length;
+
+        // Outgoing edge indexes per node, in the compressed sparse row format.
+        int[] firstEdge = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e ++) {
+            firstEdge[sources[e] + 1] ++;
+        }
+        for (int n = 0; n < nodeCount; n ++) {
+            firstEdge[n + 1] += firstEdge[n];
+        }
+        int[] outEdges = new int[edgeCount];
+        int[] fill = new int[nodeCount];
+        for (int e = 0; e < edgeCount; e ++) {
+            int n = sources[e];
+            outEdges[firstEdge[n] + fill[n] ++] = e;
+        }
+
+        int[] component = new int[nodeCount];
+        int componentCount = findComponents(nodeCount, targets, firstEdge, outEdges, component);
+
+        BitSet redundantEdges = new BitSet(edgeCount);
+        reduceAcrossComponents(sources, targets, component, componentCount, redundantEdges);
+        reduceWithinComponents(nodeCount, sources, targets, firstEdge, outEdges, component, redundantEdges);
+        return redundantEdges;
+    }
+
+    /**
+     * Finds the strongly connected components with the Tarjan's algorithm,
+     * without recursion so that a long dependency chain does not overflow
+     * the stack.  A component is always numbered lower than the components
+     * that depend on it (i.e. in the reverse topological order).
+     *
+     * @return the number of the components
+     */
+    private static int findComponents(
+            int nodeCount, int[] targets, int[] firstEdge, int[] outEdges,
+            int[] component) {
+
+        int[] index = new int[nodeCount];
+        int[] lowLink = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        int[] callStack = new int[nodeCount];
+        int callStackSize = 0;
+        int nextIndex = 1;
+        int componentCount = 0;
+
+        for (int root = 0; root < nodeCount; root ++) {
+            if (index[root] != 0) {
+                continue;
+            }
+
+            index[root] = lowLink[root] = nextIndex ++;
+            nextEdge[root] = firstEdge[root];
+            stack[stackSize ++] = root;
+            onStack[root] = true;
+            callStack[callStackSize ++] = root;
+
+            while (callStackSize > 0) {
+                int n = callStack[callStackSize - 1];
+                if (nextEdge[n] < firstEdge[n + 1]) {
+                    int m = targets[outEdges[nextEdge[n] ++]];
+                    if (index[m] == 0) {
+                        index[m] = lowLink[m] = nextIndex ++;
+                        nextEdge[m] = firstEdge[m];
+                        stack[stackSize ++] = m;
+                        onStack[m] = true;
+                        callStack[callStackSize ++] = m;
+                    } else if (onStack[m] && index[m] < lowLink[n]) {
+                        lowLink[n] = index[m];
+                    }
+                    continue;
+                }
+
+                callStackSize --;
+                if (callStackSize > 0) {
+                    int parent = callStack[callStackSize - 1];
+                    if (lowLink[n] < lowLink[parent]) {
+                        lowLink[parent] = lowLink[n];
+                    }
+                }
+
+                if (lowLink[n] == index[n]) {
+                    int m;
+                    do {
+                        m = stack[-- stackSize];
+                        onStack[m] = false;
+                        component[m] = componentCount;
+                    } while (m != n);
+                    componentCount ++;
+                }
+            }
+        }
+
+        return componentCount;
+    }
+
+    /**
+     * An edge between two components is redundant if the target component is
+     * reachable via another component.  Otherwise, only the last one of the
+     * parallel edges between the two components is retained, because all
+     * edges before it are still reachable through it.
+     */
+    private static void reduceAcrossComponents(
+            int[] sources, int[] targets, int[] component, int componentCount,
+            BitSet redundantEdges) {
+
+        List<Set<Integer>> successors = new ArrayList<Set<Integer>>(componentCount);
+        for (int c = 0; c < componentCount; c ++) {
+            successors.add(new HashSet<Integer>());
+        }
+        for (int e = 0; e < sources.length; e ++) {
+            int a = component[sources[e]];
+            int b = component[targets[e]];
+            if (a != b) {
+                successors.get(a).add(b);
+            }
+        }
+
+        // Successors always have lower numbers, so their reachability has
+        // been calculated already.
+        BitSet[] reachable = new BitSet[componentCount];
+        BitSet[] indirectlyReachable = new BitSet[componentCount];
+        for (int a = 0; a < componentCount; a ++) {
+            BitSet r = new BitSet(componentCount);
+            BitSet ir = new BitSet(componentCount);
+            for (int b: successors.get(a)) {
+                r.set(b);
+                r.or(reachable[b]);
+                ir.or(reachable[b]);
+            }
+            reachable[a] = r;
+            indirectlyReachable[a] = ir;
+        }
+
+        Set<Long> retainedPairs = new HashSet<Long>();
+        for (int e = sources.length - 1; e >= 0; e --) {
+            int a = component[sources[e]];
+            int b = component[targets[e]];
+            if (a == b) {
+                continue;
+            }
+
+            if (indirectlyReachable[a].get(b) ||
+                !retainedPairs.add(((long) a << 32) | b)) {
+                redundantEdges.set(e);
+            }
+        }
+    }
+
+    /**
+     * Visits the edges inside each component in order and removes the edge
+     * if its target is still reachable without it.  Such a path never leaves
+     * the component.
+     */
+    private static void reduceWithinComponents(
+            int nodeCount, int[] sources, int[] targets,
+            int[] firstEdge, int[] outEdges, int[] component,
+            BitSet redundantEdges) {
+
+        boolean[] visited = new boolean[nodeCount];
+        int[] queue = new int[nodeCount];
+        for (int e = 0; e < sources.length; e ++) {
+            int source = sources[e];
+            int target = targets[e];
+            int c = component[source];
+            if (c != component[target]) {
+                continue;
+            }
+
+            int head = 0;
+            int tail = 0;
+            boolean found = false;
+            queue[tail ++] = source;
+            visited[source] = true;
+            while (head < tail && !found) {
+                int n = queue[head ++];
+                for (int i = firstEdge[n]; i < firstEdge[n + 1]; i ++) {
+                    int f = outEdges[i];
+                    int m = targets[f];
+                    if (f == e || redundantEdges.get(f) || component[m] != c) {
+                        continue;
+                    }
+                    if (m == target) {
+                        found = true;
+                        break;
+                    }
+                    if (!visited[m]) {
+                        visited[m] = true;
+                        queue[tail ++] = m;
+                    }
+                }
+            }
+
+            for (int i = 0; i < tail; i ++) {
+                visited[queue[i]] = false;
+            }
+
+            if (found) {
+                redundantEdges.set(e);
+            }
+        }
+    }
+
+    private TransitiveReduction() {
+        // Unused
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * A test which writes into a temporary output directory, removed with
+ * everything in it after each test.
+ *
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public abstract class AbstractOutputDirectoryTest {
+
+    protected File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("apiviz-test-", ".tmp");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    /**
+     * Returns a diagram whose image and image map are already rendered.
+     */
+    protected Diagram newDiagram(String name, String source) throws IOException {
+        Diagram d = new Diagram(directory, name, source, ImageFormat.PNG);
+        FileUtil.writeFile(d.getImageFile(), "png:" + name);
+        d.setMap("map:" + name);
+        return d;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File f: children) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+}
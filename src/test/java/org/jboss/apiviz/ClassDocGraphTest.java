@@ -0,0 +1,675 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.PackageDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.ParameterizedType;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.SeeTag;
+import com.sun.javadoc.Tag;
+import com.sun.javadoc.Type;
+import com.sun.javadoc.WildcardType;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class ClassDocGraphTest {
+
+    private static final String ESCAPE_REGEX = "(\"|'|\\\\.?|\\s)+";
+
+    private PackageDoc example;
+    private PackageDoc store;
+    private ClassDoc service;
+    private ClassDoc abstractService;
+    private ClassDoc defaultService;
+    private ClassDoc implA;
+    private ClassDoc implB;
+    private ClassDoc secret;
+    private ClassDoc storeClass;
+
+    @Test
+    public void testEscape() {
+        assertNull(ClassDocGraph.escape(null));
+        assertEquals("", ClassDocGraph.escape(""));
+        assertEquals("Foo", ClassDocGraph.escape("Foo"));
+        assertEquals("&#171;interface&#187; Foo (org.example)",
+                ClassDocGraph.escape("&#171;interface&#187;\\nFoo\\n(org.example)"));
+        assertEquals(" a b ", ClassDocGraph.escape("\"a' \t\\\"b\\"));
+    }
+
+    @Test
+    public void testEscapeSameAsRegex() {
+        char[] alphabet = {
+                'a', 'Z', '.', '"', '\'', '\\', ' ', '\t', '\n', '\r',
+                '\u000B', '\f', '\u0085', '\u2028', '\u2029',
+                '\ud834', '\udd1e' };
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i ++) {
+            char[] text = new char[random.nextInt(12)];
+            for (int j = 0; j < text.length; j ++) {
+                text[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+
+            String s = new String(text);
+            assertEquals(s.replaceAll(ESCAPE_REGEX, " "), ClassDocGraph.escape(s));
+        }
+    }
+
+    @Test
+    public void testPackageSummaryDiagram() {
+        ClassDocGraph graph = new ClassDocGraph(newRoot());
+        assertEquals(EXAMPLE_SUMMARY, graph.getPackageSummaryDiagram(example));
+        assertEquals(STORE_SUMMARY, graph.getPackageSummaryDiagram(store));
+    }
+
+    @Test
+    public void testClassDiagram() {
+        ClassDocGraph graph = new ClassDocGraph(newRoot());
+        assertEquals(SERVICE_DIAGRAM, graph.getClassDiagram(service));
+        assertEquals(ABSTRACT_SERVICE_DIAGRAM, graph.getClassDiagram(abstractService));
+        assertEquals(DEFAULT_SERVICE_DIAGRAM, graph.getClassDiagram(defaultService));
+        assertEquals(IMPL_A_DIAGRAM, graph.getClassDiagram(implA));
+        assertEquals(IMPL_B_DIAGRAM, graph.getClassDiagram(implB));
+        assertEquals(SECRET_DIAGRAM, graph.getClassDiagram(secret));
+        assertEquals(STORE_DIAGRAM, graph.getClassDiagram(storeClass));
+    }
+
+    @Test
+    public void testMeasure() {
+        ClassDocGraph graph = new ClassDocGraph(newRoot());
+        for (PackageDoc p: new PackageDoc[] { example, store }) {
+            assertSize(
+                    CostModel.measure(graph.getPackageSummaryDiagram(p)),
+                    graph.measurePackageSummaryDiagram(p));
+        }
+        for (ClassDoc c: new ClassDoc[] { service, abstractService, defaultService, implA, implB, secret, storeClass }) {
+            assertSize(
+                    CostModel.measure(graph.getClassDiagram(c)),
+                    graph.measureClassDiagram(c));
+        }
+    }
+
+    @Test
+    public void testSourceDependencies() {
+        PackageDoc a = newPackage("org.example.a");
+        PackageDoc b = newPackage("org.example.b");
+        ClassDoc string = newType(newPackage("java.lang"), "String");
+        ClassDoc list = newType(newPackage("java.util"), "List");
+        ClassDoc map = newType(newPackage("java.util"), "Map");
+
+        // class A extends B {
+        //     List<C> field;
+        //     A(Other other) throws GException { ... }
+        //     F[] method(Map<String, ? super E> p) { ... }
+        // }
+        ClassDoc classA = newType(a, "A");
+        ClassDoc other = newType(a, "Other");
+        ClassDoc classB = newType(b, "B");
+        set(classA, "superclassType", classB);
+
+        FieldDoc field = (FieldDoc) newDoc(FieldDoc.class, new MockDoc("field"));
+        set(field, "type", newParameterizedType(list, newType(newPackage("org.example.c"), "C")));
+        set(classA, "fields", new FieldDoc[] { field });
+
+        ConstructorDoc constructor = (ConstructorDoc) newDoc(ConstructorDoc.class, new MockDoc("A"));
+        set(constructor, "parameters", new Parameter[] { newParameter(other) });
+        set(constructor, "thrownExceptionTypes", new Type[] { newType(newPackage("org.example.g"), "GException") });
+        set(classA, "constructors", new ConstructorDoc[] { constructor });
+
+        WildcardType wildcard = (WildcardType) newDoc(WildcardType.class, new MockDoc("?"));
+        set(wildcard, "asWildcardType", wildcard);
+        set(wildcard, "superBounds", new Type[] { newType(newPackage("org.example.e"), "E") });
+        MethodDoc method = newMethod("method", false);
+        set(method, "parameters", new Parameter[] { newParameter(newParameterizedType(map, string, wildcard)) });
+        // The class of an array type is the class of its elements.
+        Type array = (Type) newDoc(Type.class, new MockDoc("F[]"));
+        set(array, "asClassDoc", newType(newPackage("org.example.f"), "F"));
+        set(method, "returnType", array);
+        set(classA, "methods", new MethodDoc[] { method });
+
+        set(classA, "importedClasses", new ClassDoc[] { newType(newPackage("org.example.h"), "H") });
+
+        // Depends on its own package only.
+        set(other, "interfaceTypes", new Type[] { classA });
+
+        RootDoc root = (RootDoc) newDoc(RootDoc.class, new MockDoc("root"));
+        set(root, "classes", new ClassDoc[] { classA, other, classB });
+        set(root, "options", new String[0][]);
+
+        Map<String, Set<String>> dependencies = new ClassDocGraph(root).getSourceDependencies();
+        assertEquals(new HashSet<String>(Arrays.asList("org.example.a", "org.example.b")), dependencies.keySet());
+        assertEquals(
+                new HashSet<String>(Arrays.asList(
+                        "org.example.b", "java.util", "org.example.c", "org.example.g",
+                        "java.lang", "org.example.e", "org.example.f", "org.example.h")),
+                dependencies.get("org.example.a"));
+        assertEquals(new HashSet<String>(), dependencies.get("org.example.b"));
+    }
+
+    private static void assertSize(CostModel.Size expected, CostModel.Size actual) {
+        assertEquals(expected.getNodes(), actual.getNodes());
+        assertEquals(expected.getEdges(), actual.getEdges());
+        assertEquals(expected.getCrossings(), actual.getCrossings());
+    }
+
+    /**
+     * Builds the docs of two packages whose diagrams cover the corner cases
+     * of the graph: duplicate edges and edges which compare equal but point
+     * to different docs of the same name (the first one is drawn), a class
+     * which is found as two different docs (the last one is drawn), hidden
+     * and excluded classes, the categories with and without a color of
+     * their own, and the diagrams in both orientations.
+     */
+    private RootDoc newRoot() {
+        Map<String, ClassDoc> classes = new LinkedHashMap<String, ClassDoc>();
+
+        example = newPackage("org.example", tag(TAG_EXCLUDE, "Excluded$"));
+        store = newPackage("org.example.store", tag(TAG_CATEGORY, "store"));
+        PackageDoc base = newPackage("org.example.base");
+        PackageDoc lang = newPackage("java.lang");
+
+        ClassDoc exception = newClass(lang, "Exception");
+        set(exception, "isIncluded", false);
+        ClassDoc abstractBase = newClass(base, "Base");
+        set(abstractBase, "isIncluded", false);
+        set(abstractBase, "isAbstract", true);
+        ClassDoc deprecatedBase = newClass(base, "Base", tag("@deprecated", ""));
+        set(deprecatedBase, "isIncluded", false);
+
+        ClassDoc repository = newClass(store, "Repository");
+        set(repository, "isInterface", true);
+        storeClass = newClass(store, "Store", tag(TAG_CATEGORY, "store"));
+        set(storeClass, "interfaces", new ClassDoc[] { repository });
+
+        service = newClass(example, "Service",
+                tag(TAG_CATEGORY, "core"),
+                tag(TAG_USES, "org.example.store.Store"));
+        set(service, "isInterface", true);
+
+        abstractService = newClass(example, "AbstractService",
+                tag(TAG_EXCLUDE_SUBTYPES, ""),
+                tag(TAG_USES, "org.example.store.Store 1 * reads"),
+                tag(TAG_USES, "org.example.store.Store 1 * reads"),
+                tag(TAG_USES, "org.example.store.Store"),
+                tag(TAG_HAS, "org.example.Missing"),
+                tag(TAG_HAS, "org.example.Missing"));
+        set(abstractService, "isAbstract", true);
+        set(abstractService, "superclass", abstractBase);
+        set(abstractService, "interfaces", new ClassDoc[] { service });
+
+        defaultService = newClass(example, "DefaultService",
+                tag(TAG_LANDMARK, ""),
+                tag(TAG_USES, "org.example.Status"),
+                tag(TAG_EXCLUDE, "\\.Status$"));
+        set(defaultService, "superclass", abstractService);
+
+        ClassDoc legacy = newClass(example, "Legacy",
+                tag(TAG_CATEGORY, "misc"),
+                tag("@deprecated", ""));
+        addSeeTag(defaultService, legacy);
+        addSeeTag(legacy, defaultService);
+
+        implA = newClass(example, "ImplA",
+                tag(TAG_INHERIT, ""),
+                tag(TAG_OWNS, "org.example.Excluded"),
+                tag(TAG_COMPOSED_OF, "org.example.Status - - parts"));
+        implB = newClass(example, "ImplB", tag(TAG_STEREOTYPE, "factory"));
+        ClassDoc serviceAlias = newClass(example, "Service");
+        ClassDoc implC = newClass(example, "ImplC", tag(TAG_HAS, "org.example.Legacy oneway 1 *"));
+        secret = newClass(example, "Secret", tag(TAG_HIDDEN, ""));
+        ClassDoc excluded = newClass(example, "Excluded");
+        for (ClassDoc c: new ClassDoc[] { implA, implB, implC, secret, excluded }) {
+            set(c, "interfaces", new ClassDoc[] { service });
+        }
+        set(implB, "interfaces", new ClassDoc[] { service, serviceAlias });
+
+        ClassDoc status = newClass(example, "Status");
+        set(status, "isEnum", true);
+        ClassDoc marker = newClass(example, "Marker");
+        set(marker, "isAnnotationType", true);
+        ClassDoc serviceException = newClass(example, "ServiceException");
+        set(serviceException, "isException", true);
+        set(serviceException, "superclass", exception);
+        ClassDoc util = newClass(example, "Util");
+        set(util, "superclass", deprecatedBase);
+        set(util, "methods", new MethodDoc[] { newMethod("create", true) });
+
+        for (ClassDoc c: new ClassDoc[] {
+                service, abstractService, defaultService, legacy, implA, implB,
+                implC, secret, excluded, status, marker, serviceException, util,
+                storeClass, repository }) {
+            classes.put(c.qualifiedName(), c);
+        }
+
+        final Map<String, ClassDoc> knownClasses = new HashMap<String, ClassDoc>(classes);
+        knownClasses.put(exception.qualifiedName(), exception);
+
+        RootDoc root = (RootDoc) Proxy.newProxyInstance(
+                RootDoc.class.getClassLoader(), new Class<?>[] { RootDoc.class },
+                new MockDoc("") {
+                    @Override
+                    Object invoke(Object proxy, String methodName, Object[] args) {
+                        if (methodName.equals("classNamed")) {
+                            return knownClasses.get(args[0]);
+                        }
+                        return super.invoke(proxy, methodName, args);
+                    }
+                });
+        set(root, "classes", classes.values().toArray(new ClassDoc[classes.size()]));
+        set(root, "options", new String[][] {
+                { OPTION_CATEGORY, "core:#a0c0e0:#102030" },
+                { OPTION_CATEGORY, "store:#c0e0a0" } });
+        return root;
+    }
+
+    private static PackageDoc newPackage(String name, Tag... tags) {
+        PackageDoc pkg = (PackageDoc) newDoc(PackageDoc.class, new MockDoc(name));
+        set(pkg, "name", name);
+        set(pkg, "isIncluded", true);
+        set(pkg, "tags", tags);
+        return pkg;
+    }
+
+    private static ClassDoc newClass(PackageDoc pkg, String name, Tag... tags) {
+        String qualifiedName = pkg.name() + '.' + name;
+        ClassDoc cls = (ClassDoc) newDoc(ClassDoc.class, new MockDoc(qualifiedName));
+        set(cls, "name", name);
+        set(cls, "qualifiedName", qualifiedName);
+        set(cls, "containingPackage", pkg);
+        set(cls, "isIncluded", true);
+        set(cls, "tags", tags);
+        return cls;
+    }
+
+    /**
+     * Returns a class which is also used as a type.
+     */
+    private static ClassDoc newType(PackageDoc pkg, String name) {
+        ClassDoc cls = newClass(pkg, name);
+        set(cls, "asClassDoc", cls);
+        return cls;
+    }
+
+    private static ParameterizedType newParameterizedType(ClassDoc cls, Type... typeArguments) {
+        ParameterizedType type = (ParameterizedType) newDoc(ParameterizedType.class, new MockDoc(cls.name() + "<>"));
+        set(type, "asClassDoc", cls);
+        set(type, "asParameterizedType", type);
+        set(type, "typeArguments", typeArguments);
+        return type;
+    }
+
+    private static Parameter newParameter(Type type) {
+        Parameter parameter = (Parameter) newDoc(Parameter.class, new MockDoc("p"));
+        set(parameter, "type", type);
+        return parameter;
+    }
+
+    private static MethodDoc newMethod(String name, boolean isStatic) {
+        MethodDoc method = (MethodDoc) newDoc(MethodDoc.class, new MockDoc(name));
+        set(method, "name", name);
+        set(method, "isStatic", isStatic);
+        return method;
+    }
+
+    private static Tag tag(String kind, String text) {
+        Tag tag = (Tag) newDoc(Tag.class, new MockDoc(kind));
+        set(tag, "name", kind);
+        set(tag, "kind", kind);
+        set(tag, "text", text);
+        return tag;
+    }
+
+    private static void addSeeTag(ClassDoc cls, ClassDoc referencedClass) {
+        SeeTag tag = (SeeTag) newDoc(SeeTag.class, new MockDoc("@see"));
+        set(tag, "name", "@see");
+        set(tag, "kind", "@see");
+        set(tag, "text", referencedClass.qualifiedName());
+        set(tag, "referencedClass", referencedClass);
+        set(cls, "seeTags", new SeeTag[] { tag });
+    }
+
+    private static Object newDoc(Class<?> type, MockDoc handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static void set(Object doc, String methodName, Object value) {
+        ((MockDoc) Proxy.getInvocationHandler(doc)).values.put(methodName, value);
+    }
+
+    /**
+     * Answers the methods with the values set with {@link #set}, the
+     * {@link Object} methods by identity, and the other methods with
+     * {@code false}, an empty array or {@code null}.
+     */
+    private static class MockDoc implements InvocationHandler {
+
+        private final String name;
+        final Map<String, Object> values = new HashMap<String, Object>();
+
+        MockDoc(String name) {
+            this.name = name;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String methodName = method.getName();
+            if (methodName.equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            }
+            if (methodName.equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            }
+            if (methodName.equals("toString") && args == null) {
+                return name;
+            }
+
+            Object answer = invoke(proxy, methodName, args);
+            if (answer != null) {
+                return answer;
+            }
+
+            Class<?> type = method.getReturnType();
+            if (type == Boolean.TYPE) {
+                return Boolean.FALSE;
+            }
+            if (type.isArray()) {
+                return Array.newInstance(type.getComponentType(), 0);
+            }
+            return null;
+        }
+
+        Object invoke(Object proxy, String methodName, Object[] args) {
+            if (methodName.equals("tags") && args != null) {
+                // The tags of a kind
+                List<Tag> answer = new ArrayList<Tag>();
+                Tag[] tags = (Tag[]) values.get("tags");
+                if (tags != null) {
+                    for (Tag t: tags) {
+                        if (t.kind().equals(args[0])) {
+                            answer.add(t);
+                        }
+                    }
+                }
+                return answer.toArray(new Tag[answer.size()]);
+            }
+            return values.get(methodName);
+        }
+    }
+
+    private static String lines(String... lines) {
+        StringBuilder buf = new StringBuilder();
+        for (String l: lines) {
+            buf.append(l);
+            buf.append(NEWLINE);
+        }
+        return buf.toString();
+    }
+
+    // What the graph generated when it kept the nodes in a TreeMap and the
+    // edges in TreeSets
+
+    private static final String EXAMPLE_SUMMARY = lines(
+            "digraph APIVIZ {",
+            "rankdir=LR;",
+            "ranksep=0.3;",
+            "nodesep=0.25;",
+            "mclimit=1024;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_ServiceException [label=\"&#171;exception&#187;\\nServiceException\", tooltip=\"&#171;exception&#187; ServiceException\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ServiceException.html\"];",
+            "org_example_base_Base [label=\"Base\\n(org.example.base)\", tooltip=\"Base (org.example.base)\", style=\"filled,dotted\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\"];",
+            "org_example_DefaultService [label=\"DefaultService\", tooltip=\"DefaultService\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"DefaultService.html\"];",
+            "java_lang_Exception [label=\"Exception\\n(java.lang)\", tooltip=\"Exception (java.lang)\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\"];",
+            "org_example_ImplA [label=\"ImplA\", tooltip=\"ImplA\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ImplA.html\"];",
+            "org_example_ImplB [label=\"&#171;factory&#187;\\nImplB\", tooltip=\"&#171;factory&#187; ImplB\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ImplB.html\"];",
+            "org_example_ImplC [label=\"ImplC\", tooltip=\"ImplC\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ImplC.html\"];",
+            "org_example_Legacy [label=\"Legacy\", tooltip=\"Legacy\", style=\"filled,dotted\", color=\"#8b0000\", fontcolor=\"black\", fillcolor=\"#ff0000\", href=\"Legacy.html\"];",
+            "Missing_NotFound [label=\"Missing.NotFound\\n(org.example)\", tooltip=\"Missing.NotFound (org.example)\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\"];",
+            "org_example_store_Store [label=\"Store\\n(org.example.store)\", tooltip=\"Store (org.example.store)\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"#c0e0a0\", href=\"store/Store.html\"];",
+            "org_example_AbstractService [label=\"AbstractService\", tooltip=\"AbstractService\", fontname=\"Arial Italic\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"AbstractService.html\"];",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\", tooltip=\"&#171;interface&#187; Service\", style=\"filled\", color=\"#102030\", fontcolor=\"black\", fillcolor=\"#a0c0e0\", href=\"Service.html\"];",
+            "org_example_Util [label=\"&#171;static&#187;\\nUtil\", tooltip=\"&#171;static&#187; Util\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Util.html\"];",
+            "org_example_Status [label=\"&#171;enum&#187;\\nStatus\", tooltip=\"&#171;enum&#187; Status\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Status.html\"];",
+            "org_example_Marker [label=\"&#171;annotation&#187;\\nMarker\", tooltip=\"&#171;annotation&#187; Marker\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Marker.html\"];",
+            "org_example_base_Base -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"solid\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_AbstractService -> org_example_DefaultService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"solid\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "java_lang_Exception -> org_example_ServiceException [arrowhead=\"none\", arrowtail=\"onormal\", style=\"solid\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_base_Base -> org_example_Util [arrowhead=\"none\", arrowtail=\"onormal\", style=\"solid\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_ImplA [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_ImplB [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_ImplC [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"reads\", headlabel=\"*\", taillabel=\"1\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Status -> org_example_DefaultService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_Service [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_ImplA -> org_example_Status [arrowhead=\"open\", arrowtail=\"diamond\", style=\"solid\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"parts\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_AbstractService -> Missing_NotFound [arrowhead=\"open\", arrowtail=\"none\", style=\"solid\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_ImplC -> org_example_Legacy [arrowhead=\"open\", arrowtail=\"none\", style=\"solid\", dir=\"both\", color=\"#8b0000\", fontcolor=\"black\", label=\"\", headlabel=\"*\", taillabel=\"1\" ];",
+            "}");
+
+    private static final String STORE_SUMMARY = lines(
+            "digraph APIVIZ {",
+            "rankdir=LR;",
+            "ranksep=0.3;",
+            "nodesep=0.25;",
+            "mclimit=1024;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_store_Store [label=\"Store\", tooltip=\"Store\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"#c0e0a0\", href=\"Store.html\"];",
+            "org_example_AbstractService [label=\"AbstractService\\n(org.example)\", tooltip=\"AbstractService (org.example)\", fontname=\"Arial Italic\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\", href=\"../AbstractService.html\"];",
+            "org_example_store_Repository [label=\"&#171;interface&#187;\\nRepository\", tooltip=\"&#171;interface&#187; Repository\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Repository.html\"];",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\\n(org.example)\", tooltip=\"&#171;interface&#187; Service (org.example)\", style=\"filled\", color=\"#5d6d7d\", fontcolor=\"gray30\", fillcolor=\"#a0c0e0\", href=\"../Service.html\"];",
+            "org_example_store_Repository -> org_example_store_Store [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"reads\", headlabel=\"*\", taillabel=\"1\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_Service [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String SERVICE_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=LR;",
+            "ranksep=1.0;",
+            "nodesep=0.2;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_Excluded [label=\"Excluded\", tooltip=\"Excluded\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Excluded.html\"];",
+            "org_example_ImplA [label=\"ImplA\", tooltip=\"ImplA\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ImplA.html\"];",
+            "org_example_ImplB [label=\"&#171;factory&#187;\\nImplB\", tooltip=\"&#171;factory&#187; ImplB\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ImplB.html\"];",
+            "org_example_ImplC [label=\"ImplC\", tooltip=\"ImplC\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"ImplC.html\"];",
+            "org_example_Secret [label=\"Secret\", tooltip=\"Secret\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Secret.html\"];",
+            "org_example_store_Store [label=\"Store\\n(org.example.store)\", tooltip=\"Store (org.example.store)\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"#ffffed\", href=\"store/Store.html\"];",
+            "org_example_AbstractService [label=\"AbstractService\", tooltip=\"AbstractService\", fontname=\"Arial Italic\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"AbstractService.html\"];",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\", tooltip=\"&#171;interface&#187; Service\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"Service.html\"];",
+            "org_example_Service -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_Excluded [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_ImplA [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_ImplB [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_ImplC [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_Secret [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_Service [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String ABSTRACT_SERVICE_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=TB;",
+            "ranksep=0.4;",
+            "nodesep=0.3;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\", tooltip=\"&#171;interface&#187; Service\", style=\"filled\", color=\"#102030\", fontcolor=\"black\", fillcolor=\"#a0c0e0\", href=\"Service.html\"];",
+            "org_example_base_Base [label=\"Base\\n(org.example.base)\", tooltip=\"Base (org.example.base)\", fontname=\"Arial Italic\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\"];",
+            "org_example_AbstractService [label=\"AbstractService\", tooltip=\"AbstractService\", fontname=\"Arial Italic\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"AbstractService.html\"];",
+            "org_example_store_Store [label=\"Store\\n(org.example.store)\", tooltip=\"Store (org.example.store)\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"#ffffed\", href=\"store/Store.html\"];",
+            "Missing_NotFound [label=\"Missing.NotFound\\n(org.example)\", tooltip=\"Missing.NotFound (org.example)\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\"];",
+            "org_example_base_Base -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"solid\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_Service -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"reads\", headlabel=\"*\", taillabel=\"1\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_AbstractService -> Missing_NotFound [arrowhead=\"open\", arrowtail=\"none\", style=\"solid\", dir=\"both\", color=\"#4d4d4d\", fontcolor=\"gray30\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String DEFAULT_SERVICE_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=TB;",
+            "ranksep=0.4;",
+            "nodesep=0.3;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_AbstractService [label=\"AbstractService\", tooltip=\"AbstractService\", fontname=\"Arial Italic\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"AbstractService.html\"];",
+            "org_example_Legacy [label=\"Legacy\", tooltip=\"Legacy\", style=\"filled,dotted\", color=\"#8b0000\", fontcolor=\"black\", fillcolor=\"#ff0000\", href=\"Legacy.html\"];",
+            "org_example_DefaultService [label=\"DefaultService\", tooltip=\"DefaultService\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"DefaultService.html\"];",
+            "org_example_AbstractService -> org_example_DefaultService [arrowhead=\"none\", arrowtail=\"onormal\", style=\"solid\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_DefaultService -> org_example_Legacy [arrowhead=\"none\", arrowtail=\"none\", style=\"solid\", dir=\"both\", color=\"#8b0000\", fontcolor=\"black\", label=\"&#171;see also&#187;\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String IMPL_A_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=TB;",
+            "ranksep=0.4;",
+            "nodesep=0.3;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_Status [label=\"&#171;enum&#187;\\nStatus\", tooltip=\"&#171;enum&#187; Status\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Status.html\"];",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\", tooltip=\"&#171;interface&#187; Service\", style=\"filled\", color=\"#102030\", fontcolor=\"black\", fillcolor=\"#a0c0e0\", href=\"Service.html\"];",
+            "org_example_ImplA [label=\"ImplA\", tooltip=\"ImplA\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"ImplA.html\"];",
+            "org_example_Service -> org_example_ImplA [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_ImplA -> org_example_Status [arrowhead=\"open\", arrowtail=\"diamond\", style=\"solid\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"parts\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String IMPL_B_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=TB;",
+            "ranksep=0.4;",
+            "nodesep=0.3;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\", tooltip=\"&#171;interface&#187; Service\", style=\"filled\", color=\"#102030\", fontcolor=\"black\", fillcolor=\"#a0c0e0\", href=\"Service.html\"];",
+            "org_example_ImplB [label=\"&#171;factory&#187;\\nImplB\", tooltip=\"&#171;factory&#187; ImplB\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"ImplB.html\"];",
+            "org_example_Service -> org_example_ImplB [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String SECRET_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=TB;",
+            "ranksep=0.4;",
+            "nodesep=0.3;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\", tooltip=\"&#171;interface&#187; Service\", style=\"filled\", color=\"#102030\", fontcolor=\"black\", fillcolor=\"#a0c0e0\", href=\"Service.html\"];",
+            "org_example_Secret [label=\"Secret\", tooltip=\"Secret\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"Secret.html\"];",
+            "org_example_Service -> org_example_Secret [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#102030\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+
+    private static final String STORE_DIAGRAM = lines(
+            "digraph APIVIZ {",
+            "rankdir=TB;",
+            "ranksep=0.4;",
+            "nodesep=0.3;",
+            "mclimit=128;",
+            "outputorder=edgesfirst;",
+            "center=1;",
+            "remincross=true;",
+            "searchsize=65536;",
+            "splines=polyline;",
+            "edge [fontsize=10, fontname=\"Arial\", style=\"setlinewidth(0.6)\"]; ",
+            "node [shape=box, fontsize=10, fontname=\"Arial\", width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; ",
+            "org_example_Service [label=\"&#171;interface&#187;\\nService\\n(org.example)\", tooltip=\"&#171;interface&#187; Service (org.example)\", style=\"filled\", color=\"#5d6d7d\", fontcolor=\"gray30\", fillcolor=\"#edffff\", href=\"../Service.html\"];",
+            "org_example_store_Repository [label=\"&#171;interface&#187;\\nRepository\", tooltip=\"&#171;interface&#187; Repository\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"white\", href=\"Repository.html\"];",
+            "org_example_AbstractService [label=\"AbstractService\\n(org.example)\", tooltip=\"AbstractService (org.example)\", fontname=\"Arial Italic\", style=\"filled\", color=\"#4d4d4d\", fontcolor=\"gray30\", fillcolor=\"white\", href=\"../AbstractService.html\"];",
+            "org_example_store_Store [label=\"Store\", tooltip=\"Store\", style=\"filled\", color=\"#000000\", fontcolor=\"black\", fillcolor=\"khaki1\", href=\"Store.html\"];",
+            "org_example_store_Repository -> org_example_store_Store [arrowhead=\"none\", arrowtail=\"onormal\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"reads\", headlabel=\"*\", taillabel=\"1\" ];",
+            "org_example_store_Store -> org_example_AbstractService [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "org_example_store_Store -> org_example_Service [arrowhead=\"none\", arrowtail=\"open\", style=\"setlinewidth(1.5), dotted\", dir=\"both\", color=\"#000000\", fontcolor=\"black\", label=\"\", headlabel=\"\", taillabel=\"\" ];",
+            "}");
+}
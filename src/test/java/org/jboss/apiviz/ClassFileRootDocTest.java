@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.RootDoc;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class ClassFileRootDocTest {
+
+    private static RootDoc root;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        File classes = new File(
+                ClassFileRootDocTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        root = ClassFileRootDoc.load(new File[] { classes }, new String[0][], ClassFileRootDoc.PROTECTED);
+    }
+
+    @Test
+    public void testClasses() {
+        ClassDoc b = root.classNamed("net.gleamynode.apiviz.b.B");
+        assertTrue(b.isInterface());
+        assertTrue(b.isIncluded());
+        assertNull(b.superclass());
+        assertEquals("net.gleamynode.apiviz.b", b.containingPackage().name());
+        assertEquals(1, b.methods().length);
+
+        ClassDoc abstractB = root.classNamed("net.gleamynode.apiviz.b.AbstractB");
+        assertEquals("AbstractB", abstractB.name());
+        assertTrue(abstractB.isAbstract());
+        assertFalse(abstractB.isInterface());
+        assertTrue(abstractB.isOrdinaryClass());
+        assertEquals("java.lang.Object", abstractB.superclass().qualifiedName());
+        assertFalse(abstractB.superclass().isIncluded());
+        assertSame(b, abstractB.interfaces()[0]);
+        assertEquals(0, abstractB.tags().length);
+        assertTrue(Arrays.asList(root.classes()).contains(abstractB));
+    }
+
+    @Test
+    public void testNestedClasses() {
+        ClassDoc failure = root.classNamed("org.jboss.apiviz.ClassFileRootDocTest.Failure");
+        assertEquals("ClassFileRootDocTest.Failure", failure.name());
+        assertTrue(failure.isException());
+        assertFalse(failure.isError());
+        assertFalse(failure.isOrdinaryClass());
+        assertEquals("java.lang.IllegalStateException", failure.superclass().qualifiedName());
+
+        assertTrue(root.classNamed("org.jboss.apiviz.ClassFileRootDocTest.Marker").isAnnotationType());
+        assertFalse(root.classNamed("org.jboss.apiviz.ClassFileRootDocTest.Marker").isInterface());
+        assertTrue(root.classNamed("org.jboss.apiviz.ClassFileRootDocTest.Kind").isEnum());
+        assertNull(root.classNamed("org.jboss.apiviz.ClassFileRootDocTest.Hidden"));
+        for (ClassDoc c: root.classes()) {
+            assertFalse(c.name(), c.name().contains("$"));
+        }
+    }
+
+    public static class Failure extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    public @interface Marker {
+        // Empty
+    }
+
+    public enum Kind {
+        A
+    }
+
+    @SuppressWarnings("unused")
+    private static class Hidden {
+        Object anonymous = new Object() {
+            // Empty
+        };
+    }
+}
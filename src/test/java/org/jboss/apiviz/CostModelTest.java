@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class CostModelTest extends AbstractOutputDirectoryTest {
+
+    @Test
+    public void testMeasure() {
+        CostModel.Size size = CostModel.measure(
+                "digraph APIVIZ {\n" +
+                "rankdir=LR;\n" +
+                "edge [fontsize=10];\n" +
+                "node [shape=box];\n" +
+                "a [label=\"a -> b\"];\n" +
+                "b [label=\"b\"];\n" +
+                "c [label=\"c\"];\n" +
+                "d [label=\"d\"];\n" +
+                "a -> b [style=\"solid\"];\n" +
+                "a -> c [style=\"solid\"];\n" +
+                "a -> d [style=\"solid\"];\n" +
+                "d -> e [style=\"solid\"];\n" +
+                "}\n");
+        assertEquals(5, size.getNodes());
+        assertEquals(4, size.getEdges());
+        // b, c and d are on the second rank.
+        assertEquals(5 * 3, size.getCrossings());
+    }
+
+    @Test
+    public void testFit() throws IOException {
+        CostModel model = new CostModel(directory);
+        CostModel.Size small = new CostModel.Size(10, 10, 20);
+        CostModel.Size big = new CostModel.Size(800, 1000, 80000);
+        assertTrue(model.estimate(big) > model.estimate(small));
+
+        // A slow Graphviz whose time is dominated by the start-up.
+        for (int i = 0; i < 100; i ++) {
+            model.record(new CostModel.Size(i, i, i * 2), 2000000000L + i * 1000000L);
+        }
+        model.save();
+
+        model = new CostModel(directory);
+        assertEquals(2050, model.estimate(new CostModel.Size(50, 50, 100)), 100);
+        assertTrue(model.estimate(big) > model.estimate(small));
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.SourcePosition;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class DependencyScannerTest {
+
+    private static final String A = "net.gleamynode.apiviz.a";
+    private static final String B = "net.gleamynode.apiviz.b";
+    private static final String C = "net.gleamynode.apiviz.c";
+
+    @Test
+    public void testAnalyze() throws Exception {
+        File classes = new File(
+                DependencyScannerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        DependencyScanner scanner = new DependencyScanner(Arrays.asList(A, B, C), null);
+        scanner.addDirectory(classes);
+        scanner.analyze(new FailingReporter(), 2);
+
+        assertTrue(scanner.countClasses() > 0);
+        assertTrue(scanner.containsClass(B + ".DefaultB"));
+        assertFalse(scanner.containsClass(DependencyScannerTest.class.getName()));
+
+        Map<String, Set<String>> dependencies = scanner.getDependencies();
+        assertEquals(new HashSet<String>(Arrays.asList(A, B, C)), dependencies.keySet());
+        assertEquals(new HashSet<String>(), dependencies.get(A));
+        // B refers to A only in its method descriptors.
+        assertEquals(new HashSet<String>(Arrays.asList(A)), dependencies.get(B));
+    }
+
+    @Test
+    public void testAnalyzeArchive() throws Exception {
+        File classes = new File(
+                DependencyScannerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File jar = File.createTempFile("apiviz-", ".jar");
+        try {
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+            try {
+                addEntries(out, classes, "");
+            } finally {
+                out.close();
+            }
+
+            DependencyScanner expected = new DependencyScanner(Arrays.asList(A, B, C), null);
+            expected.addDirectory(classes);
+            expected.analyze(new FailingReporter(), 1);
+
+            DependencyScanner actual = new DependencyScanner(Arrays.asList(A, B, C), null);
+            actual.addArchive(jar);
+            actual.analyze(new FailingReporter(), 2);
+
+            assertEquals(expected.countClasses(), actual.countClasses());
+            assertTrue(actual.containsClass(B + ".DefaultB"));
+            assertEquals(expected.getDependencies(), actual.getDependencies());
+        } finally {
+            jar.delete();
+        }
+    }
+
+    @Test
+    public void testUnrelatedClasses() throws Exception {
+        File classes = new File(
+                DependencyScannerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File jar = File.createTempFile("apiviz-", ".jar");
+        File dir = File.createTempFile("apiviz-", ".tmp");
+        dir.delete();
+        File lib = new File(dir, "org/example/lib");
+        lib.mkdirs();
+        try {
+            // Not class files at all; reading them would be reported.
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+            try {
+                out.putNextEntry(new ZipEntry("org/example/lib/Library.class"));
+                out.write(new byte[64]);
+                out.closeEntry();
+                out.putNextEntry(new ZipEntry("Main.class"));
+                out.write(new byte[64]);
+                out.closeEntry();
+            } finally {
+                out.close();
+            }
+            FileUtil.writeFile(new File(lib, "Library.class"), "garbage");
+            FileUtil.writeFile(new File(dir, "Main.class"), "garbage");
+
+            DependencyScanner scanner = new DependencyScanner(Arrays.asList(A, B, C), null);
+            scanner.addDirectory(classes);
+            scanner.addDirectory(dir);
+            scanner.addArchive(jar);
+            scanner.analyze(new FailingReporter(), 2);
+
+            assertTrue(scanner.containsClass(B + ".DefaultB"));
+            assertFalse(scanner.containsClass("org.example.lib.Library"));
+            assertEquals(new HashSet<String>(Arrays.asList(A, B, C)), scanner.getDependencies().keySet());
+        } finally {
+            jar.delete();
+            new File(lib, "Library.class").delete();
+            new File(dir, "Main.class").delete();
+            for (File f = lib; !f.equals(dir); f = f.getParentFile()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        File dir = File.createTempFile("apiviz-", ".tmp");
+        dir.delete();
+        File classes = new File(dir, "classes");
+        File b = new File(classes, "net/gleamynode/apiviz/b");
+        b.mkdirs();
+        try {
+            File source = new File(new File(
+                    DependencyScannerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI()),
+                    "net/gleamynode/apiviz/b");
+            for (File f: source.listFiles()) {
+                FileUtil.copyFile(f, new File(b, f.getName()));
+            }
+
+            DependencyCache cache = new DependencyCache(dir);
+            DependencyScanner scanner = new DependencyScanner(Arrays.asList(A, B), cache);
+            scanner.addDirectory(classes);
+            scanner.analyze(new FailingReporter(), 2);
+            assertEquals(new HashSet<String>(Arrays.asList(A)), scanner.getDependencies().get(B));
+            cache.save();
+
+            // Anything is fine as long as it looks the same.
+            File defaultB = new File(b, "DefaultB.class");
+            long modified = defaultB.lastModified();
+            byte[] garbage = new byte[(int) defaultB.length()];
+            FileUtil.writeFile(defaultB, new String(garbage, "ISO-8859-1"));
+            defaultB.setLastModified(modified);
+
+            cache = new DependencyCache(dir);
+            scanner = new DependencyScanner(Arrays.asList(A, B), cache);
+            scanner.addDirectory(classes);
+            scanner.analyze(new FailingReporter(), 2);
+            assertTrue(scanner.containsClass(B + ".DefaultB"));
+            assertEquals(new HashSet<String>(Arrays.asList(A)), scanner.getDependencies().get(B));
+            cache.save();
+
+            defaultB.setLastModified(modified - 60000);
+            scanner = new DependencyScanner(Arrays.asList(A, B), new DependencyCache(dir));
+            scanner.addDirectory(classes);
+            try {
+                scanner.analyze(new FailingReporter(), 1);
+                fail();
+            } catch (AssertionError e) {
+                assertTrue(e.getMessage().startsWith("Failed to analyze " + defaultB));
+            }
+        } finally {
+            for (File f: b.listFiles()) {
+                f.delete();
+            }
+            for (File f = b; !f.equals(dir); f = f.getParentFile()) {
+                f.delete();
+            }
+            new File(dir, DependencyCache.FILENAME).delete();
+            dir.delete();
+        }
+    }
+
+    private static void addEntries(ZipOutputStream out, File dir, String prefix) throws Exception {
+        for (File f: dir.listFiles()) {
+            if (f.isDirectory()) {
+                addEntries(out, f, prefix + f.getName() + '/');
+            } else {
+                out.putNextEntry(new ZipEntry(prefix + f.getName()));
+                out.write(FileUtil.readBytes(f));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedClassFile() throws Exception {
+        InputStream in = DependencyScannerTest.class.getResourceAsStream("DependencyScannerTest.class");
+        byte[] content = new byte[64];
+        try {
+            assertEquals(content.length, in.read(content));
+        } finally {
+            in.close();
+        }
+
+        DependencyScanner.scan(ByteBuffer.wrap(content));
+    }
+
+    private static class FailingReporter implements DocErrorReporter {
+        public void printError(String msg) {
+            fail(msg);
+        }
+
+        public void printError(SourcePosition pos, String msg) {
+            fail(msg);
+        }
+
+        public void printWarning(String msg) {
+            fail(msg);
+        }
+
+        public void printWarning(SourcePosition pos, String msg) {
+            fail(msg);
+        }
+
+        public void printNotice(String msg) {
+            // Ignore
+        }
+
+        public void printNotice(SourcePosition pos, String msg) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class ExclusionRulesTest {
+
+    private static final String[] NAMES = {
+        "java.lang.Object", "java.util.Map", "org.example.Impl", "org.example.ImplTest",
+        "org.example.aa", "org.example.ab", "org.example.a.b", "org.example.AB",
+    };
+
+    @Test
+    public void testNone() {
+        assertTrue(ExclusionRules.compile(Arrays.<String>asList()).isEmpty());
+        assertFalse(ExclusionRules.NONE.excludes("java.lang.Object"));
+    }
+
+    @Test
+    public void testCombined() {
+        List<String> rules = Arrays.asList("^java\\.", "Impl$", "(?i)\\.ab$");
+        ExclusionRules r = ExclusionRules.compile(rules);
+        assertEquals(1, r.countPatterns());
+        assertVerdicts(rules, r);
+        assertTrue(r.excludes("org.example.AB"));
+        assertFalse(r.excludes("org.example.ImplTest"));
+    }
+
+    @Test
+    public void testBackReferences() {
+        // Combined, \1 would refer to the group of the first rule.
+        List<String> rules = Arrays.asList("(z)", "\\.(a)\\1$", "(?<c>b)\\k<c>");
+        ExclusionRules r = ExclusionRules.compile(rules);
+        assertEquals(3, r.countPatterns());
+        assertVerdicts(rules, r);
+        assertTrue(r.excludes("org.example.aa"));
+        assertFalse(r.excludes("org.example.ab"));
+    }
+
+    @Test
+    public void testNamedGroups() {
+        // Combined, the group would be defined twice.
+        List<String> rules = Arrays.asList("\\.(?<n>aa)$", "\\.(?<n>ab)$", "Map$");
+        ExclusionRules r = ExclusionRules.compile(rules);
+        assertEquals(3, r.countPatterns());
+        assertVerdicts(rules, r);
+        assertTrue(r.excludes("org.example.ab"));
+        assertTrue(r.excludes("java.util.Map"));
+    }
+
+    @Test
+    public void testQuotationsAndComments() {
+        List<String> rules = Arrays.asList("\\Qa.b\\E", "(?x) Impl \\$ # the implementations", "^java\\.lang\\.");
+        ExclusionRules r = ExclusionRules.compile(rules);
+        assertEquals(3, r.countPatterns());
+        assertVerdicts(rules, r);
+        assertTrue(r.excludes("org.example.a.b"));
+        assertFalse(r.excludes("org.example.ab"));
+    }
+
+    @Test
+    public void testLookbehind() {
+        List<String> rules = Arrays.asList("(?<=example\\.)a", "(?<!example\\.)Map");
+        ExclusionRules r = ExclusionRules.compile(rules);
+        assertEquals(1, r.countPatterns());
+        assertVerdicts(rules, r);
+    }
+
+    /**
+     * Asserts that the rules exclude what any of the separately compiled
+     * expressions is found in, and nothing else.
+     */
+    private static void assertVerdicts(List<String> rules, ExclusionRules r) {
+        for (String name: NAMES) {
+            boolean expected = false;
+            for (String rule: rules) {
+                expected |= Pattern.compile(rule).matcher(name).find();
+            }
+            assertEquals(name, expected, r.excludes(name));
+        }
+    }
+}
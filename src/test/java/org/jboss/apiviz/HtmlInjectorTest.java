@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class HtmlInjectorTest {
+
+    private static final Pattern INSERTION_POINT_PATTERN = Pattern.compile(
+            "((<\\/PRE>)(?=\\s*<P>)|(?=<TABLE BORDER=\"1\")|(?=<div class=\"contentContainer\"))");
+
+    @Test
+    public void testInject() throws IOException {
+        assertEquals("a</PRE>X \n<P>b", inject("a</PRE> \n<P>b", "X"));
+        assertEquals("a</PRE>b<P>YX<TABLE BORDER=\"1\">", inject("a</PRE>b<P>Y<TABLE BORDER=\"1\">", "X"));
+        assertEquals("X<div class=\"contentContainer\"></PRE><P>", inject("<div class=\"contentContainer\"></PRE><P>", "X"));
+        assertNull(inject("</PRE> <TABLE BORDER=\"2\"><div>", "X"));
+    }
+
+    @Test
+    public void testLongWhitespace() throws IOException {
+        StringBuilder buf = new StringBuilder("</PRE>");
+        for (int i = 0; i < 200000; i ++) {
+            buf.append(' ');
+        }
+        String page = buf.toString();
+        assertEquals(expected(page + "<P>", "X"), inject(page + "<P>", "X"));
+        assertNull(inject(page, "X"));
+    }
+
+    @Test
+    public void testSameAsRegex() throws IOException {
+        String[] tokens = {
+                "</PRE>", "<P>", "<TABLE BORDER=\"1\"", "<div class=\"contentContainer\">",
+                "<", "</PRE", "<TABLE", " ", "\n", "\t", "a", "é" };
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i ++) {
+            StringBuilder buf = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j ++) {
+                buf.append(tokens[random.nextInt(tokens.length)]);
+            }
+            String page = buf.toString();
+            assertEquals(page, expected(page, "[X]"), inject(page, "[X]"));
+        }
+    }
+
+    private static String expected(String page, String content) {
+        Matcher matcher = INSERTION_POINT_PATTERN.matcher(page);
+        if (!matcher.find()) {
+            return null;
+        }
+        return page.substring(0, matcher.end()) + content + page.substring(matcher.end());
+    }
+
+    private static String inject(String page, String content) throws IOException {
+        // Read a few bytes at a time to cross the buffer boundaries.
+        final Random random = new Random(page.hashCode());
+        InputStream in = new ByteArrayInputStream(page.getBytes("ISO-8859-1")) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(3)));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            HtmlInjector.inject(in, out, content.getBytes("ISO-8859-1"));
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        return out.toString("ISO-8859-1");
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class JournalTest extends AbstractOutputDirectoryTest {
+
+    @Test
+    public void testResume() throws IOException {
+        Diagram a = newDiagram("a", "digraph APIVIZ { a; }");
+        Diagram b = newDiagram("b", "digraph APIVIZ { b; }");
+        Journal journal = new Journal(directory, "2.26", false);
+        journal.completed(a);
+        journal.failed(b);
+        // Crashed while writing the next record
+        journal.close(false);
+        FileOutputStream out = new FileOutputStream(new File(directory, Journal.FILENAME), true);
+        out.write(new byte[] { 0, 0, 1 });
+        out.close();
+
+        journal = new Journal(directory, "2.26", true);
+        a.setMap(null);
+        assertTrue(journal.reuse(a));
+        assertEquals("map:a", a.getMap());
+        assertFalse(journal.reuse(b));
+        assertTrue(journal.hasFailed(b));
+        assertFalse(journal.hasFailed(new Diagram(directory, "b", "digraph APIVIZ { c; }", ImageFormat.PNG)));
+
+        // Records appended after the torn one are read by the next resume.
+        journal.completed(b);
+        journal.close(false);
+        journal = new Journal(directory, "2.26", true);
+        assertTrue(journal.reuse(a));
+        assertTrue(journal.reuse(b));
+        assertFalse(journal.hasFailed(b));
+
+        // Completed runs leave nothing behind.
+        journal.close(true);
+        assertFalse(new File(directory, Journal.FILENAME).exists());
+
+        // Not resuming starts over.
+        journal = new Journal(directory, "2.26", false);
+        assertFalse(journal.reuse(a));
+        journal.close(true);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class LayoutQualityTest {
+
+    private static final String SOURCE =
+            "digraph APIVIZ {\n" +
+            "rankdir=LR;\n" +
+            "mclimit=1024;\n" +
+            "remincross=true;\n" +
+            "splines=polyline;\n" +
+            "edge [fontsize=10];\n" +
+            "a [label=\"splines=polyline;\"];\n" +
+            "}\n";
+
+    @Test
+    public void testBest() {
+        assertSame(SOURCE, LayoutQuality.BEST.apply(SOURCE));
+        assertNull(LayoutQuality.BEST.getEngine());
+    }
+
+    @Test
+    public void testApply() {
+        assertEquals(
+                "digraph APIVIZ {\n" +
+                "searchsize=30;" + Constant.NEWLINE +
+                "rankdir=LR;\n" +
+                "mclimit=1;\n" +
+                "remincross=false;\n" +
+                "splines=line;\n" +
+                "edge [fontsize=10];\n" +
+                "a [label=\"splines=polyline;\"];\n" +
+                "}\n",
+                LayoutQuality.STRAIGHT_EDGES.apply(SOURCE));
+        assertNull(LayoutQuality.STRAIGHT_EDGES.getEngine());
+    }
+
+    @Test
+    public void testSimpleEngine() {
+        assertEquals("neato", LayoutQuality.SIMPLE_ENGINE.getEngine());
+        String source = LayoutQuality.SIMPLE_ENGINE.apply(SOURCE.replace("\n", "\r\n"));
+        assertTrue(source.contains("\r\nsplines=line;\r\n"));
+        assertTrue(source.contains("overlap=scale;"));
+    }
+}
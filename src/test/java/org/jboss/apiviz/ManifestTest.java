@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class ManifestTest extends AbstractOutputDirectoryTest {
+
+    @Test
+    public void testReuse() throws IOException {
+        Manifest manifest = new Manifest(directory, "2.26");
+        Diagram a = newDiagram("a", "digraph APIVIZ { a; }");
+        Diagram b = newDiagram("b", "digraph APIVIZ { b; }");
+        assertFalse(manifest.reuse(a));
+        manifest.put(a);
+        manifest.put(b);
+        manifest.save();
+
+        manifest = new Manifest(directory, "2.26");
+        a = new Diagram(directory, "a", "digraph APIVIZ { a; }", ImageFormat.PNG);
+        assertTrue(manifest.reuse(a));
+        assertEquals("map:a", a.getMap());
+
+        // The source has changed.
+        assertFalse(manifest.reuse(new Diagram(directory, "b", "digraph APIVIZ { c; }", ImageFormat.PNG)));
+        manifest.save();
+
+        // Only the reused diagram is carried over.
+        manifest = new Manifest(directory, "2.26");
+        assertTrue(manifest.reuse(a));
+        assertFalse(manifest.reuse(new Diagram(directory, "b", "digraph APIVIZ { b; }", ImageFormat.PNG)));
+
+        // Rendered by a different Graphviz version.
+        assertFalse(new Manifest(directory, "2.28").reuse(a));
+
+        // The image has been modified.
+        FileUtil.writeFile(a.getImageFile(), "modified");
+        assertFalse(new Manifest(directory, "2.26").reuse(a));
+    }
+}
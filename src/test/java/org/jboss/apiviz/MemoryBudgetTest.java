@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class MemoryBudgetTest {
+
+    private static final long GB = 1024L * 1048576;
+
+    @Test
+    public void testAcquire() {
+        // Far more than the child processes of the test could use.
+        MemoryBudget budget = new MemoryBudget(100 * GB, 4);
+        TestJob big = new TestJob(80 * GB);
+        TestJob medium = new TestJob(50 * GB);
+        TestJob small = new TestJob(10 * GB);
+        List<TestJob> jobs = new ArrayList<TestJob>(Arrays.asList(big, medium, small));
+
+        assertSame(big, budget.acquire(jobs));
+        // The small job fills the gap the medium one does not fit in.
+        assertSame(small, budget.acquire(jobs));
+        assertNull(budget.acquire(jobs));
+
+        budget.release(big);
+        assertSame(medium, budget.acquire(jobs));
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void testAcquireAlone() {
+        MemoryBudget budget = new MemoryBudget(GB, 4);
+        TestJob huge = new TestJob(8 * GB);
+        List<TestJob> jobs = new ArrayList<TestJob>(Arrays.asList(huge));
+        assertSame(huge, budget.acquire(jobs));
+    }
+
+    @Test
+    public void testChildrenResidentMemory() throws Exception {
+        if (!new File("/proc/self/status").canRead()) {
+            // Not on Linux.
+            assertEquals(-1, MemoryBudget.getChildrenResidentMemory());
+            return;
+        }
+
+        long before = MemoryBudget.getChildrenResidentMemory();
+        Process p = new ProcessBuilder("sleep", "10").start();
+        try {
+            long after = 0;
+            for (int i = 0; i < 50 && after <= before; i ++) {
+                Thread.sleep(20);
+                after = MemoryBudget.getChildrenResidentMemory();
+            }
+            assertTrue(after > before);
+        } finally {
+            p.destroy();
+            p.waitFor();
+        }
+    }
+
+    private static final class TestJob implements MemoryBudget.Job {
+        private final long memory;
+
+        TestJob(long memory) {
+            this.memory = memory;
+        }
+
+        public long getMemory() {
+            return memory;
+        }
+    }
+}
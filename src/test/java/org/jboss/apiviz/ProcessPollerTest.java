@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class ProcessPollerTest {
+
+    @Test
+    public void testWatch() throws Exception {
+        if (!new File("/bin/sh").isFile()) {
+            return;
+        }
+
+        // Far more than a pipe holds, on both streams.
+        Process p = new ProcessBuilder(
+                "/bin/sh", "-c",
+                "i=0; while [ $i -lt 20000 ]; do echo out$i; echo err$i >&2; i=$((i+1)); done; exit 3").start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Future<Integer> result = ProcessPoller.watch(p, out, err, 0, null);
+        assertEquals(3, result.get().intValue());
+        assertTrue(out.toString().startsWith("out0\nout1\n"));
+        assertTrue(out.toString().endsWith("out19999\n"));
+        assertTrue(err.toString().endsWith("err19999\n"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        if (!new File("/bin/sh").isFile()) {
+            return;
+        }
+
+        Process p = new ProcessBuilder("/bin/sh", "-c", "sleep 10").start();
+        long startTime = System.currentTimeMillis();
+        Future<Integer> result = ProcessPoller.watch(
+                p, new ByteArrayOutputStream(), new ByteArrayOutputStream(), 200, null);
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(System.currentTimeMillis() - startTime < 5000);
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        if (!new File("/bin/sh").isFile()) {
+            return;
+        }
+
+        final BlockingQueue<Future<Integer>> doneResults = new LinkedBlockingQueue<Future<Integer>>();
+        Process p = new ProcessBuilder("/bin/sh", "-c", "echo out; exit 5").start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Future<Integer> result = ProcessPoller.watch(
+                p, out, new ByteArrayOutputStream(), 0, new ProcessPoller.Listener() {
+                    public void done(Future<Integer> result) {
+                        doneResults.add(result);
+                    }
+                });
+        Future<Integer> doneResult = doneResults.poll(10, TimeUnit.SECONDS);
+        assertSame(result, doneResult);
+        assertTrue(doneResult.isDone());
+        assertEquals(5, doneResult.get().intValue());
+        assertEquals("out\n", out.toString());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class RenderCacheTest extends AbstractOutputDirectoryTest {
+
+    @Test
+    public void testHitAndMiss() throws IOException {
+        RenderCache cache = new RenderCache(new File(directory, "cache"), 1048576, "2.26");
+        Diagram a = newDiagram("a", "digraph APIVIZ { a; }");
+        assertFalse(cache.get(a));
+
+        cache.put(a);
+        a.getImageFile().delete();
+        a.setMap(null);
+        assertTrue(cache.get(a));
+        assertEquals("png:a", FileUtil.readFile(a.getImageFile()));
+        assertEquals("map:a", a.getMap());
+        assertFalse(new File(directory, "a.map").exists());
+
+        // Same source, but rendered by a different Graphviz version.
+        cache = new RenderCache(new File(directory, "cache"), 1048576, "2.28");
+        assertFalse(cache.get(a));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        // Each entry takes 10 bytes; allow only two of them.
+        RenderCache cache = new RenderCache(new File(directory, "cache"), 25, "2.26");
+        Diagram a = newDiagram("a", "digraph APIVIZ { a; }");
+        Diagram b = newDiagram("b", "digraph APIVIZ { b; }");
+        Diagram c = newDiagram("c", "digraph APIVIZ { c; }");
+
+        cache.put(a);
+        cache.put(b);
+        assertTrue(cache.get(a)); // 'b' is now the least recently used one.
+        cache.put(c);
+
+        assertTrue(cache.get(a));
+        assertFalse(cache.get(b));
+        assertTrue(cache.get(c));
+        assertEquals(4, new File(directory, "cache").list().length);
+    }
+
+    @Test
+    public void testImageFormats() throws IOException {
+        RenderCache cache = new RenderCache(new File(directory, "cache"), 1048576, "2.26");
+        Diagram png = newDiagram("a", "digraph APIVIZ { a; }");
+        cache.put(png);
+
+        // Same source, but a different image format.
+        Diagram svg = new Diagram(directory, "a", "digraph APIVIZ { a; }", ImageFormat.SVG);
+        assertNull(svg.getMap());
+        assertFalse(cache.get(svg));
+
+        FileUtil.writeFile(svg.getImageFile(), "svg:a");
+        cache.put(svg);
+        svg.getImageFile().delete();
+
+        // Entries survive a restart.
+        cache = new RenderCache(new File(directory, "cache"), 1048576, "2.26");
+        assertTrue(cache.get(svg));
+        assertEquals("svg:a", FileUtil.readFile(svg.getImageFile()));
+        assertTrue(cache.get(png));
+        assertEquals(3, new File(directory, "cache").list().length);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * by the @author tags. See the COPYRIGHT.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.apiviz;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author The APIviz Project (apiviz-dev@lists.jboss.org)
+ */
+public class TransitiveReductionTest {
+
+    @Test
+    public void testChain() {
+        // 0 -> 1 -> 2 and 0 -> 2
+        BitSet redundant = TransitiveReduction.reduce(
+                3, new int[] { 0, 1, 0 }, new int[] { 1, 2, 2 });
+        assertEquals(1, redundant.cardinality());
+        assertTrue(redundant.get(2));
+    }
+
+    @Test
+    public void testCycle() {
+        // 0 -> 1 -> 2 -> 0 and 0 -> 2: only the shortcut is redundant.
+        BitSet redundant = TransitiveReduction.reduce(
+                3, new int[] { 0, 0, 1, 2 }, new int[] { 2, 1, 2, 0 });
+        assertEquals(1, redundant.cardinality());
+        assertTrue(redundant.get(0));
+    }
+
+    @Test
+    public void testLongChain() {
+        int length = 10000;
+        int[] sources = new int[length];
+        int[] targets = new int[length];
+        for (int i = 0; i < length; i ++) {
+            sources[i] = i;
+            targets[i] = i + 1;
+        }
+        assertTrue(TransitiveReduction.reduce(length + 1, sources, targets).isEmpty());
+    }
+
+    @Test
+    public void testSameResultAsIterativeRemoval() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round ++) {
+            int nodeCount = 2 + random.nextInt(12);
+            int edgeCount = random.nextInt(nodeCount * 3);
+            Set<Long> pairs = new HashSet<Long>();
+            List<int[]> edges = new ArrayList<int[]>();
+            for (int i = 0; i < edgeCount; i ++) {
+                int s = random.nextInt(nodeCount);
+                int t = random.nextInt(nodeCount);
+                if (s != t && pairs.add(((long) s << 32) | t)) {
+                    edges.add(new int[] { s, t });
+                }
+            }
+
+            int[] sources = new int[edges.size()];
+            int[] targets = new int[edges.size()];
+            for (int i = 0; i < sources.length; i ++) {
+                sources[i] = edges.get(i)[0];
+                targets[i] = edges.get(i)[1];
+            }
+
+            assertEquals(
+                    "round " + round,
+                    reduceIteratively(sources, targets),
+                    TransitiveReduction.reduce(nodeCount, sources, targets));
+        }
+    }
+
+    /**
+     * Removes the first redundant edge until there's none, as APIviz used to
+     * do.
+     */
+    private static BitSet reduceIteratively(int[] sources, int[] targets) {
+        BitSet redundant = new BitSet();
+        Map<Integer, Set<Integer>> dependencies = new LinkedHashMap<Integer, Set<Integer>>();
+        for (int e = 0; e < sources.length; e ++) {
+            Set<Integer> s = dependencies.get(sources[e]);
+            if (s == null) {
+                s = new HashSet<Integer>();
+                dependencies.put(sources[e], s);
+            }
+            s.add(targets[e]);
+        }
+
+        for (;;) {
+            boolean removed = false;
+            for (int e = 0; e < sources.length; e ++) {
+                if (redundant.get(e)) {
+                    continue;
+                }
+                if (isIndirectlyReachable(dependencies, sources[e], targets[e])) {
+                    redundant.set(e);
+                    dependencies.get(sources[e]).remove(targets[e]);
+                    removed = true;
+                    break;
+                }
+            }
+            if (!removed) {
+                return redundant;
+            }
+        }
+    }
+
+    private static boolean isIndirectlyReachable(
+            Map<Integer, Set<Integer>> dependencies, int source, int target) {
+        Set<Integer> visited = new HashSet<Integer>();
+        visited.add(source);
+        for (int t: dependencies.get(source)) {
+            if (t != target && isIndirectlyReachable(dependencies, t, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIndirectlyReachable(
+            Map<Integer, Set<Integer>> dependencies, int source, int target, Set<Integer> visited) {
+        if (!visited.add(source)) {
+            return false;
+        }
+        Set<Integer> targets = dependencies.get(source);
+        if (targets == null) {
+            return false;
+        }
+        for (int t: targets) {
+            if (t == target || isIndirectlyReachable(dependencies, t, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}